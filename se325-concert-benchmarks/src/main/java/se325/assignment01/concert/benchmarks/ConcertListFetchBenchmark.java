@@ -0,0 +1,166 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.ConcertDTO;
+import se325.assignment01.concert.service.domain.Concert;
+import se325.assignment01.concert.service.mapper.ConcertMapper;
+import se325.assignment01.concert.service.services.PersistenceManager;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the two ways of loading the full concert list: a single query that join fetches each concert's dates
+ * and performers (the old approach, which returns a row for every date and performer of every concert), and a plain
+ * concert query whose dates and performers are loaded by subselect (what ConcertResource.getAllConcerts does now).
+ * <p>
+ * The benchmark runs against its own in-memory H2 database, seeded with the usual catalogue plus a number of
+ * generated concerts. Each iteration loads the concerts once and converts them to DTOs; the caches are cleared
+ * before every iteration, so every load goes to the database. The "statements" counter is the number of SQL
+ * statements Hibernate ran, summed over the measurement iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dconcert.db.url=jdbc:h2:mem:concert-list-benchmark;DB_CLOSE_DELAY=-1")
+public class ConcertListFetchBenchmark {
+
+    private static final String JOIN_FETCH_QUERY = "SELECT DISTINCT concert " +
+            "FROM Concert concert " +
+            "LEFT OUTER JOIN FETCH concert.dates " +
+            "LEFT OUTER JOIN FETCH concert.performers";
+
+    private static final String SUBSELECT_QUERY = "SELECT concert FROM Concert concert";
+
+    // the number of performers inserted by db-init.sql
+    private static final int NUM_PERFORMERS = 11;
+
+    @Param({"joinFetch", "subselect"})
+    private String fetch;
+
+    @Param({"5000"})
+    private int concerts;
+
+    @Param({"4"})
+    private int datesPerConcert;
+
+    @Param({"3"})
+    private int performersPerConcert;
+
+    private String query;
+    private SessionFactory sessionFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        query = "joinFetch".equals(fetch) ? JOIN_FETCH_QUERY : SUBSELECT_QUERY;
+        seed();
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void evictCaches() {
+        sessionFactory.getCache().evictAllRegions();
+    }
+
+    @Benchmark
+    public List<ConcertDTO> loadConcerts(StatementCounter counter) {
+        Statistics statistics = sessionFactory.getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+
+            List<ConcertDTO> concertDTOs = new ArrayList<>();
+            for (Concert concert : em.createQuery(query, Concert.class)
+                    .setHint(QueryHints.CACHEABLE, false)
+                    .getResultList()) {
+                concertDTOs.add(ConcertMapper.toDto(concert));
+            }
+
+            em.getTransaction().commit();
+
+            counter.statements += statistics.getPrepareStatementCount() - statementsBefore;
+            return concertDTOs;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Adds generated concerts, each with its own dates and some of the existing performers.
+     */
+    private void seed() {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement concertInserts = connection.prepareStatement(
+                        "INSERT INTO CONCERTS (ID, TITLE, IMAGE_NAME, BLURB) VALUES (?, ?, ?, ?)");
+                     PreparedStatement dateInserts = connection.prepareStatement(
+                             "INSERT INTO CONCERT_DATES (CONCERT_ID, DATE) VALUES (?, ?)");
+                     PreparedStatement performerInserts = connection.prepareStatement(
+                             "INSERT INTO CONCERT_PERFORMER (CONCERT_ID, PERFORMER_ID) VALUES (?, ?)")) {
+
+                    LocalDateTime firstDate = LocalDateTime.of(2030, 1, 1, 20, 0);
+
+                    for (int i = 0; i < concerts; i++) {
+                        long id = 1000 + i;
+
+                        concertInserts.setLong(1, id);
+                        concertInserts.setString(2, "Benchmark Concert " + i);
+                        concertInserts.setString(3, "concerts/benchmark.jpg");
+                        concertInserts.setString(4, "A generated concert.");
+                        concertInserts.addBatch();
+
+                        for (int d = 0; d < datesPerConcert; d++) {
+                            dateInserts.setLong(1, id);
+                            dateInserts.setTimestamp(2,
+                                    Timestamp.valueOf(firstDate.plusDays((long) i * datesPerConcert + d)));
+                            dateInserts.addBatch();
+                        }
+
+                        for (int p = 0; p < performersPerConcert; p++) {
+                            performerInserts.setLong(1, id);
+                            performerInserts.setLong(2, (i + p) % NUM_PERFORMERS + 1);
+                            performerInserts.addBatch();
+                        }
+                    }
+
+                    concertInserts.executeBatch();
+                    dateInserts.executeBatch();
+                    performerInserts.executeBatch();
+                }
+            });
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * The number of SQL statements run.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StatementCounter {
+        public long statements;
+    }
+}
@@ -0,0 +1,55 @@
+package se325.assignment01.concert.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.ConcertInfoSubscriptionDTO;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing and reading a DTO whose date goes through the common module's LocalDateTimeSerializer and
+ * LocalDateTimeDeserializer, as every request and response that carries a concert date does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalDateTimeJsonBenchmark {
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+
+    private ConcertInfoSubscriptionDTO dto;
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        writer = mapper.writerFor(ConcertInfoSubscriptionDTO.class);
+        reader = mapper.readerFor(ConcertInfoSubscriptionDTO.class);
+
+        dto = new ConcertInfoSubscriptionDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), 80);
+        json = writer.writeValueAsString(dto);
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        return writer.writeValueAsString(dto);
+    }
+
+    @Benchmark
+    public ConcertInfoSubscriptionDTO deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public ConcertInfoSubscriptionDTO roundTrip() throws IOException {
+        return reader.readValue(writer.writeValueAsString(dto));
+    }
+}
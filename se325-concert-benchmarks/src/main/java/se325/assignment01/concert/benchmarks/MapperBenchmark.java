@@ -0,0 +1,72 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.BookingDTO;
+import se325.assignment01.concert.common.dto.ConcertDTO;
+import se325.assignment01.concert.common.dto.SeatDTO;
+import se325.assignment01.concert.common.types.Genre;
+import se325.assignment01.concert.service.domain.*;
+import se325.assignment01.concert.service.mapper.BookingMapper;
+import se325.assignment01.concert.service.mapper.ConcertMapper;
+import se325.assignment01.concert.service.mapper.SeatMapper;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks converting domain objects to the DTOs that are sent to clients. Concerts are converted for every
+ * catalogue response that isn't cached, and bookings and seats for every booking and seat map response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    private Concert concert;
+    private Booking booking;
+    private Seat seat;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+
+        // about the size of the largest concerts in the catalogue
+        concert = new Concert(1, "PTX: The World Tour", "ptx.jpg", "Pentatonix are touring the world.");
+        for (int day = 0; day < 4; day++) {
+            concert.getDates().add(date.plusDays(day));
+        }
+        for (int id = 1; id <= 3; id++) {
+            concert.getPerformers().add(
+                    new Performer(id, "Performer " + id, "performer" + id + ".jpg", Genre.Pop, "A performer."));
+        }
+
+        Set<Seat> seats = new HashSet<>();
+        for (int num = 1; num <= 6; num++) {
+            seats.add(new Seat("C" + num, true, date, new BigDecimal("200.00")));
+        }
+        booking = new Booking(concert, new User("testuser", "pa55word"), date, seats);
+
+        seat = seats.iterator().next();
+    }
+
+    @Benchmark
+    public ConcertDTO concertToDto() {
+        return ConcertMapper.toDto(concert);
+    }
+
+    @Benchmark
+    public BookingDTO bookingToDto() {
+        return BookingMapper.toDto(booking);
+    }
+
+    @Benchmark
+    public SeatDTO seatToDto() {
+        return SeatMapper.toDto(seat);
+    }
+}
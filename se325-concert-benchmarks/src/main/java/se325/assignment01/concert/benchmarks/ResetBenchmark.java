@@ -0,0 +1,75 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.service.services.PersistenceManager;
+import se325.assignment01.concert.service.services.SeatAvailabilityManager;
+import se325.assignment01.concert.service.util.ConcertUtils;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the two ways TestResource can reset the database (see {@link PersistenceManager#reset()}): the full
+ * reset, which recreates the EntityManagerFactory and with it the schema and the catalogue, and the fast reset, which
+ * only clears the bookings and authentication tokens and unbooks the seats.
+ * <p>
+ * Before every reset, the seats for every concert date are materialized and a booking is made for each of them
+ * (with native SQL, so that no entities are loaded), so there is something to reset. Only the reset and
+ * ConcertUtils.initConcerts(), which is what TestResource runs, are timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dconcert.db.url=jdbc:h2:mem:reset-benchmark;DB_CLOSE_DELAY=-1")
+public class ResetBenchmark {
+
+    @Param({"full", "fast"})
+    private String mode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("concert.reset.mode", mode);
+    }
+
+    /**
+     * Materializes every concert date's seats, and books the first seat on each date for the first user.
+     */
+    @Setup(Level.Invocation)
+    public void book() {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            List<LocalDateTime> dates = em.createQuery("SELECT DISTINCT concertDate " +
+                    "FROM Concert concert JOIN concert.dates concertDate", LocalDateTime.class)
+                    .getResultList();
+
+            em.getTransaction().begin();
+            for (LocalDateTime date : dates) {
+                SeatAvailabilityManager.instance().forDate(date);
+
+                em.createNativeQuery("INSERT INTO BOOKINGS (ID, CONCERT_ID, USER_ID, DATE) " +
+                        "SELECT NEXT VALUE FOR BOOKINGS_SEQ, CONCERT_ID, 1, DATE FROM CONCERT_DATES WHERE DATE = ?1")
+                        .setParameter(1, date)
+                        .executeUpdate();
+                em.createNativeQuery("UPDATE SEAT SET IS_BOOKED = TRUE WHERE DATE = ?1 AND LABEL = 'A1'")
+                        .setParameter(1, date)
+                        .executeUpdate();
+            }
+            em.createNativeQuery("INSERT INTO AUTHENTICATIONS (AUTHENTICATION_TOKEN, USER_ID, EXPIRES_AT) " +
+                    "VALUES (RANDOM_UUID(), 1, DATEADD('DAY', 1, CURRENT_TIMESTAMP))")
+                    .executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public void reset() {
+        PersistenceManager.instance().reset();
+        ConcertUtils.initConcerts();
+    }
+}
@@ -0,0 +1,104 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.service.services.PersistenceManager;
+import se325.assignment01.concert.service.services.SeatAvailabilityManager;
+import se325.assignment01.concert.service.services.SeatClaimStrategy;
+import se325.assignment01.concert.service.util.ConcertUtils;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.WebApplicationException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link SeatClaimStrategy seat claim strategies} when many bookings race for the same seats.
+ * <p>
+ * Each iteration starts from a freshly reset database, and every thread then tries to claim a few random adjacent
+ * seats on the same concert date, each claim in its own transaction, a fixed number of times (the batch size). This
+ * goes straight to the database, without the in-memory claim that ConcertResource makes first (which would stop
+ * almost all of the conflicts reaching the database). The score is the time each iteration took; the counters are
+ * how many claims succeeded, were rejected because a seat was already booked, or failed at commit or on a lock,
+ * summed over the threads and the measurement iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+@Warmup(iterations = 2, batchSize = 20)
+@Measurement(iterations = 20, batchSize = 20)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dconcert.db.url=jdbc:h2:mem:seat-claim-benchmark;DB_CLOSE_DELAY=-1",
+        "-Dconcert.db.pool.maxSize=16"})
+public class SeatClaimContentionBenchmark {
+
+    // a date that db-init.sql has a concert on
+    private static final LocalDateTime DATE = LocalDateTime.of(2020, 2, 15, 20, 0);
+
+    @Param({"OPTIMISTIC", "BULK_UPDATE"})
+    private SeatClaimStrategy strategy;
+
+    @Param({"3"})
+    private int seatsPerClaim;
+
+    @Setup(Level.Iteration)
+    public void resetSeats() {
+        PersistenceManager.instance().reset();
+        ConcertUtils.initConcerts();
+        SeatAvailabilityManager.instance().forDate(DATE);
+    }
+
+    /**
+     * Tries to claim random seats in a transaction of their own.
+     */
+    @Benchmark
+    public void claim(Outcomes outcomes) {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            strategy.claim(em, DATE, randomSeats());
+            em.getTransaction().commit();
+            outcomes.booked++;
+        } catch (WebApplicationException e) {
+            outcomes.alreadyBooked++;
+        } catch (RuntimeException e) {
+            // e.g. an optimistic lock failure at commit, or a lock timeout
+            outcomes.failed++;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * @return The labels of a random run of adjacent seats in a row.
+     */
+    private List<String> randomSeats() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char row = (char) ('A' + random.nextInt(TheatreLayout.NUM_ROWS));
+        int first = 1 + random.nextInt(TheatreLayout.NUM_SEATS_PER_ROW - seatsPerClaim + 1);
+
+        List<String> labels = new ArrayList<>();
+        for (int seat = first; seat < first + seatsPerClaim; seat++) {
+            labels.add("" + row + seat);
+        }
+        return labels;
+    }
+
+    /**
+     * How each thread's claims turned out.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long booked;
+        public long alreadyBooked;
+        public long failed;
+    }
+}
@@ -0,0 +1,82 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.service.services.PersistenceManager;
+import se325.assignment01.concert.service.util.ConcertUtils;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks seeding the seats for a large number of concert dates with {@link ConcertUtils#createSeats}, which is
+ * what startup and every database reset do.
+ * <p>
+ * Seeding is run with each of the given JDBC batch sizes. A batch size of 1 sends every insert on its own, which is
+ * how seats were seeded before inserts were batched. The schema is recreated before every seeding, so each one
+ * starts from an empty SEAT table. Each iteration seeds the seats once; the "statements" counter is the number of
+ * SQL statements sent, summed over the measurement iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Dconcert.db.url=jdbc:h2:mem:seat-seeding-benchmark;DB_CLOSE_DELAY=-1")
+public class SeatSeedingBenchmark {
+
+    @Param({"10000"})
+    private int dates;
+
+    @Param({"1", "50"})
+    private int batchSize;
+
+    private List<LocalDateTime> seatDates;
+    private EntityManager em;
+    private Statistics statistics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("concert.db.batchSize", Integer.toString(batchSize));
+
+        seatDates = new ArrayList<>();
+        LocalDateTime firstDate = LocalDateTime.of(2030, 1, 1, 20, 0);
+        for (int i = 0; i < dates; i++) {
+            seatDates.add(firstDate.plusDays(i));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void recreateSchema() {
+        PersistenceManager.instance().reset();
+
+        em = PersistenceManager.instance().createEntityManager();
+        statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeEntityManager() {
+        em.close();
+    }
+
+    @Benchmark
+    public int createSeats(StatementCounter counter) {
+        int seats = ConcertUtils.createSeats(em, seatDates);
+        counter.statements += statistics.getPrepareStatementCount();
+        return seats;
+    }
+
+    /**
+     * The number of SQL statements sent.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StatementCounter {
+        public long statements;
+    }
+}
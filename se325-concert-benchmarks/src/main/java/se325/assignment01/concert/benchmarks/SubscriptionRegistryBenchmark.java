@@ -0,0 +1,63 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.ConcertInfoSubscriptionDTO;
+import se325.assignment01.concert.service.services.SubscriptionRegistry;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks checking a concert date's subscriptions after a booking, with the given number of subscribers waiting
+ * on the date. Their thresholds are all above the percentage booked, so most bookings reach none of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionRegistryBenchmark {
+
+    private static final long CONCERT_ID = 1;
+    private static final LocalDateTime DATE = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+    private static final int PERCENTAGE_BOOKED = 10;
+
+    @Param({"10", "1000", "100000"})
+    private int subscribers;
+
+    private SubscriptionRegistry registry;
+    private ConcertInfoSubscriptionDTO reachedSubscription;
+
+    @Setup
+    public void setUp() {
+        registry = new SubscriptionRegistry();
+
+        Random random = new Random(325);
+        for (int i = 0; i < subscribers; i++) {
+            int threshold = PERCENTAGE_BOOKED + 1 + random.nextInt(100 - PERCENTAGE_BOOKED);
+            registry.add(null, new ConcertInfoSubscriptionDTO(CONCERT_ID, DATE, threshold));
+        }
+
+        reachedSubscription = new ConcertInfoSubscriptionDTO(CONCERT_ID, DATE, PERCENTAGE_BOOKED);
+    }
+
+    /**
+     * A booking that reaches no subscription's threshold.
+     */
+    @Benchmark
+    public List<SubscriptionRegistry.Subscription> takeNoneReached() {
+        return registry.takeReached(CONCERT_ID, DATE, PERCENTAGE_BOOKED);
+    }
+
+    /**
+     * A subscription that is added, and then taken by a booking that reaches its threshold (and no other's).
+     */
+    @Benchmark
+    public List<SubscriptionRegistry.Subscription> addAndTakeReached() {
+        registry.add(null, reachedSubscription);
+        return registry.takeReached(CONCERT_ID, DATE, PERCENTAGE_BOOKED);
+    }
+}
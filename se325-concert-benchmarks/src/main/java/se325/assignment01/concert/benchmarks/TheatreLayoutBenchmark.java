@@ -0,0 +1,29 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks creating the seats for a concert date, which is done the first time each date is booked or its seats
+ * are looked at.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TheatreLayoutBenchmark {
+
+    private final LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+
+    @Benchmark
+    public Set<Seat> createSeatsFor() {
+        return TheatreLayout.createSeatsFor(date);
+    }
+}
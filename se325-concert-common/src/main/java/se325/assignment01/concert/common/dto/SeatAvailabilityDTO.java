@@ -0,0 +1,70 @@
+package se325.assignment01.concert.common.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import se325.assignment01.concert.common.jackson.LocalDateTimeDeserializer;
+import se325.assignment01.concert.common.jackson.LocalDateTimeSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents an update to the seats available for a concert on a date, as streamed to clients.
+ * concertId           the id of the concert
+ * date                the date of the particular performance
+ * numSeatsRemaining   the number of seats that have not been booked
+ * bookedSeats         the labels of the seats that have been booked - all of them in the first update on a stream,
+ *                     and only the newly booked ones in each update after that
+ */
+public class SeatAvailabilityDTO {
+
+    private long concertId;
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime date;
+    private int numSeatsRemaining;
+    private List<String> bookedSeats = new ArrayList<>();
+
+    public SeatAvailabilityDTO() {
+    }
+
+    public SeatAvailabilityDTO(long concertId, LocalDateTime date, int numSeatsRemaining, List<String> bookedSeats) {
+        this.concertId = concertId;
+        this.date = date;
+        this.numSeatsRemaining = numSeatsRemaining;
+        this.bookedSeats = bookedSeats;
+    }
+
+    public long getConcertId() {
+        return concertId;
+    }
+
+    public void setConcertId(long concertId) {
+        this.concertId = concertId;
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDateTime date) {
+        this.date = date;
+    }
+
+    public int getNumSeatsRemaining() {
+        return numSeatsRemaining;
+    }
+
+    public void setNumSeatsRemaining(int numSeatsRemaining) {
+        this.numSeatsRemaining = numSeatsRemaining;
+    }
+
+    public List<String> getBookedSeats() {
+        return bookedSeats;
+    }
+
+    public void setBookedSeats(List<String> bookedSeats) {
+        this.bookedSeats = bookedSeats;
+    }
+}
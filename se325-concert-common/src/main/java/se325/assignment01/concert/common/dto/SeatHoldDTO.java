@@ -0,0 +1,83 @@
+package se325.assignment01.concert.common.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import se325.assignment01.concert.common.jackson.LocalDateTimeDeserializer;
+import se325.assignment01.concert.common.jackson.LocalDateTimeSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents seats that are being held for a user, until they are booked or the hold expires.
+ * id           the id of the hold, used to confirm or release it
+ * concertId    the id of the concert
+ * date         the date on which the seats are held
+ * seatLabels   the seats that are held
+ * expiresAt    when the hold expires, after which the seats are free for anyone to book
+ */
+public class SeatHoldDTO {
+
+    private String id;
+    private long concertId;
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime date;
+    private List<String> seatLabels = new ArrayList<>();
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime expiresAt;
+
+    public SeatHoldDTO() {
+    }
+
+    public SeatHoldDTO(String id, long concertId, LocalDateTime date, List<String> seatLabels,
+                       LocalDateTime expiresAt) {
+        this.id = id;
+        this.concertId = concertId;
+        this.date = date;
+        this.seatLabels = seatLabels;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getConcertId() {
+        return concertId;
+    }
+
+    public void setConcertId(long concertId) {
+        this.concertId = concertId;
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDateTime date) {
+        this.date = date;
+    }
+
+    public List<String> getSeatLabels() {
+        return seatLabels;
+    }
+
+    public void setSeatLabels(List<String> seatLabels) {
+        this.seatLabels = seatLabels;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
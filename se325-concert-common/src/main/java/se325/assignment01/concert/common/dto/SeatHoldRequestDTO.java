@@ -0,0 +1,75 @@
+package se325.assignment01.concert.common.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import se325.assignment01.concert.common.jackson.LocalDateTimeDeserializer;
+import se325.assignment01.concert.common.jackson.LocalDateTimeSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a request to hold seats for a while, so that they can be booked without anyone else taking them first.
+ * concertId     the id of the concert
+ * date          the date on which the seats are to be held
+ * seatLabels    the seats to hold
+ * holdSeconds   how long to hold the seats for, or 0 for the service's default
+ */
+public class SeatHoldRequestDTO {
+
+    private long concertId;
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime date;
+    private List<String> seatLabels = new ArrayList<>();
+    private int holdSeconds;
+
+    public SeatHoldRequestDTO() {
+    }
+
+    public SeatHoldRequestDTO(long concertId, LocalDateTime date, List<String> seatLabels) {
+        this.concertId = concertId;
+        this.date = date;
+        this.seatLabels = seatLabels;
+    }
+
+    public SeatHoldRequestDTO(long concertId, LocalDateTime date, List<String> seatLabels, int holdSeconds) {
+        this.concertId = concertId;
+        this.date = date;
+        this.seatLabels = seatLabels;
+        this.holdSeconds = holdSeconds;
+    }
+
+    public long getConcertId() {
+        return concertId;
+    }
+
+    public void setConcertId(long concertId) {
+        this.concertId = concertId;
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDateTime date) {
+        this.date = date;
+    }
+
+    public List<String> getSeatLabels() {
+        return seatLabels;
+    }
+
+    public void setSeatLabels(List<String> seatLabels) {
+        this.seatLabels = seatLabels;
+    }
+
+    public int getHoldSeconds() {
+        return holdSeconds;
+    }
+
+    public void setHoldSeconds(int holdSeconds) {
+        this.holdSeconds = holdSeconds;
+    }
+}
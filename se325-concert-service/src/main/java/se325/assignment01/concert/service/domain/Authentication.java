@@ -1,13 +1,17 @@
 package se325.assignment01.concert.service.domain;
 
 import javax.persistence.*;
+import java.time.LocalDateTime;
 
 /**
  * Class to represent an Authentication. An Authentication is characterised
- * by a unique authentication token (primary key), and the User it is for.
+ * by a unique authentication token (primary key), the User it is for, and
+ * when it expires. Expired authentications are deleted in batches, found
+ * through the index on their expiry time.
  */
 @Entity
-@Table(name = "AUTHENTICATIONS")
+@Table(name = "AUTHENTICATIONS",
+        indexes = @Index(name = "IDX_AUTHENTICATIONS_EXPIRES_AT", columnList = "EXPIRES_AT"))
 public class Authentication {
 
     @Id
@@ -18,14 +22,22 @@ public class Authentication {
     @JoinColumn(name = "USER_ID", nullable = false)
     private User user;
 
+    @Column(name = "EXPIRES_AT", nullable = false)
+    private LocalDateTime expiresAt;
+
     public Authentication(){};
 
-    public Authentication(String authToken, User user) {
+    public Authentication(String authToken, User user, LocalDateTime expiresAt) {
         this.authToken = authToken;
         this.user = user;
+        this.expiresAt = expiresAt;
     }
 
     public User getUser() {
         return user;
     }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
 }
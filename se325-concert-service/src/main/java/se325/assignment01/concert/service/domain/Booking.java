@@ -9,13 +9,18 @@ import java.util.Set;
  * Class to represent a Booking. A Booking consists of a
  * unique ID (primary key), the concert, the date, and seats
  * that the booking books, and the user that makes the booking.
+ * <p>
+ * A user's bookings are looked up by their user, so USER_ID is indexed.
  */
 @Entity
-@Table(name = "BOOKINGS")
+@Table(name = "BOOKINGS", indexes = @Index(name = "IDX_BOOKINGS_USER_ID", columnList = "USER_ID"))
 public class Booking {
 
+    // IDs are allocated from the sequence 50 at a time, so that inserting a
+    // booking doesn't need a round trip to the database for its ID first.
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "BOOKINGS_SEQ")
+    @SequenceGenerator(name = "BOOKINGS_SEQ", sequenceName = "BOOKINGS_SEQ", allocationSize = 50)
     @Column(name = "ID", nullable = false)
     private Long id;
 
@@ -5,13 +5,30 @@ import java.util.*;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.Immutable;
+
 /**
  * Class to represent a Concert. A Concert consists of a unique ID,
  * a title, an image name, a blurb, and the dates that the concert
  * is on.
+ * <p>
+ * Concerts never change once they have been loaded, so they are kept in the
+ * read-only second-level cache along with their dates and performers.
+ * <p>
+ * The dates and performers are fetched with subselects: when they are first
+ * needed for one of a list of concerts, they are loaded for every concert in
+ * the list with one query each, rather than joining them onto the concerts
+ * (which returns a row for every date/performer combination).
  */
 @Entity
 @Table(name = "CONCERTS")
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
 public class Concert {
 
     @Id
@@ -31,12 +48,17 @@ public class Concert {
     @ElementCollection
     @CollectionTable(
             name = "CONCERT_DATES",
-            joinColumns = @JoinColumn(name = "CONCERT_ID")
+            joinColumns = @JoinColumn(name = "CONCERT_ID"),
+            indexes = @Index(name = "IDX_CONCERT_DATES_CONCERT_ID", columnList = "CONCERT_ID")
     )
     @Column(name = "DATE")
+    @Fetch(FetchMode.SUBSELECT)
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
     private Set<LocalDateTime> dates;
 
     @ManyToMany
+    @Fetch(FetchMode.SUBSELECT)
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
     @JoinTable(
             name = "CONCERT_PERFORMER",
             joinColumns = @JoinColumn(name = "CONCERT_ID"),
@@ -1,5 +1,8 @@
 package se325.assignment01.concert.service.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Immutable;
 import se325.assignment01.concert.common.types.Genre;
 
 import javax.persistence.*;
@@ -8,9 +11,15 @@ import java.util.Objects;
 /**
  * Class to represent a Performer. A Performer consists of a
  * unique ID (primary key), a name, an image, a genre, and a blurb.
+ * <p>
+ * Performers never change once they have been loaded, so they are kept in
+ * the read-only second-level cache.
  */
 @Entity
 @Table(name = "PERFORMERS")
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
 public class Performer {
 
     @Id
@@ -8,13 +8,22 @@ import java.time.LocalDateTime;
  * Class to represent a Seat that can be booked. A Seat consists
  * of a unique ID (primary key), a label, the price, and the date
  * that it can be booked on.
+ * <p>
+ * Seats are always looked up by date, along with a label or booked status, so
+ * both are indexed. A seat's label is unique on its date.
  */
 @Entity
-@Table(name = "SEAT")
+@Table(name = "SEAT", indexes = {
+		@Index(name = "IDX_SEAT_DATE_LABEL", columnList = "DATE, LABEL", unique = true),
+		@Index(name = "IDX_SEAT_DATE_IS_BOOKED", columnList = "DATE, IS_BOOKED")
+})
 public class Seat {
 
+	// IDs are allocated from the sequence 50 at a time, so that seats can be
+	// inserted in JDBC batches without fetching each seat's ID first.
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEAT_SEQ")
+	@SequenceGenerator(name = "SEAT_SEQ", sequenceName = "SEAT_SEQ", allocationSize = 50)
 	@Column(name = "ID", nullable = false)
 	private Long id;
 
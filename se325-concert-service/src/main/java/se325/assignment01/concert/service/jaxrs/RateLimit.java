@@ -0,0 +1,55 @@
+package se325.assignment01.concert.service.jaxrs;
+
+/**
+ * The limits that {@link RateLimited} web methods count towards. Web methods with the same limit share it, so each
+ * client gets one bucket for all of them. The rates given here are defaults, which can be overridden with the system
+ * properties concert.ratelimit.&lt;name&gt;.perSecond and concert.ratelimit.&lt;name&gt;.burst.
+ */
+public enum RateLimit {
+
+    /**
+     * For web methods that don't name a limit.
+     */
+    DEFAULT("default", 5, 10),
+
+    /**
+     * For web methods that book or hold seats.
+     */
+    BOOKINGS("bookings", 5, 20),
+
+    /**
+     * For web methods that subscribe to notifications, which each keep a connection open.
+     */
+    SUBSCRIPTIONS("subscriptions", 2, 10);
+
+    private final String name;
+    private final double perSecond;
+    private final int burst;
+
+    RateLimit(String name, double perSecond, int burst) {
+        this.name = name;
+        this.perSecond = perSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * The name of the limit, as used in the system properties that override its rates.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * How many requests each client can make per second, on average.
+     */
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    /**
+     * How many requests each client can make at once, after making none for a while.
+     */
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,69 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import se325.assignment01.concert.service.services.Authenticator;
+import se325.assignment01.concert.service.services.RateLimiter;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns away requests to {@link RateLimited} web methods from clients that have made too many of them recently, with
+ * 429 (Too Many Requests) and a Retry-After header giving the number of seconds until they can try again.
+ * <p>
+ * Clients are told apart by the user their authentication token was issued to, or by their IP address otherwise.
+ * Only tokens that the {@link Authenticator} accepts identify a user, so that a client can't get a fresh allowance by
+ * sending a made-up token; made-up tokens count towards their IP address instead. Tokens are usually cached, so
+ * checking one here rarely needs the database, and the resource method then finds it cached too.
+ */
+@RateLimited
+@Priority(Priorities.AUTHENTICATION - 100)
+public class RateLimitFilter implements ContainerRequestFilter {
+
+    private static final String AUTH_COOKIE = "auth";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        RateLimited rateLimited = resourceInfo.getResourceMethod().getAnnotation(RateLimited.class);
+        if (rateLimited == null) {
+            rateLimited = resourceInfo.getResourceClass().getAnnotation(RateLimited.class);
+        }
+        RateLimit limit = rateLimited.value();
+
+        long waitNanos = RateLimiter.instance().tryAcquire(
+                limit.getName(), limit.getPerSecond(), limit.getBurst(), clientOf(requestContext));
+
+        if (waitNanos > 0) {
+            // rounded up, so that a token is available by the time the client tries again
+            long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1;
+            requestContext.abortWith(Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                    .build());
+        }
+    }
+
+    private String clientOf(ContainerRequestContext requestContext) {
+        Cookie cookie = requestContext.getCookies().get(AUTH_COOKIE);
+        if (cookie != null && !cookie.getValue().isEmpty()) {
+            Long userId = Authenticator.instance().authenticatedUserId(cookie.getValue());
+            if (userId != null) {
+                return "user:" + userId;
+            }
+        }
+        return "ip:" + servletRequest.getRemoteAddr();
+    }
+}
@@ -0,0 +1,28 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import javax.ws.rs.NameBinding;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a web method whose requests are rate limited by the {@link RateLimitFilter}. For example:
+ * <code>
+ *     &#64;POST
+ *     &#64;RateLimited(RateLimit.BOOKINGS)
+ *     public Response book(...) {
+ *         // ....
+ *     }
+ * </code>
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface RateLimited {
+
+    /**
+     * The limit that requests count towards.
+     */
+    RateLimit value() default RateLimit.DEFAULT;
+}
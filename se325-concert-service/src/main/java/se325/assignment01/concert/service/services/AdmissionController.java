@@ -0,0 +1,188 @@
+package se325.assignment01.concert.service.services;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Singleton class that acts as a waiting room for bookings. Only a few bookings for each concert date are carried
+ * out at once; the rest wait their turn, in the order they arrived, so that a popular on-sale doesn't swamp the
+ * database. Dates are unique across concerts, so each date has its own waiting room. A waiting booking keeps its
+ * request thread, so as well as each date's queue, the number of bookings waiting across all dates is limited, to
+ * leave threads for everything else.
+ * <p>
+ * If too many bookings are already waiting, or a booking waits too long, it is turned away with 503 (Service
+ * Unavailable), a Retry-After header, and a body giving the length of the queue. Bookings that are let in have an
+ * X-Queue-Position header, giving the number of bookings that were waiting ahead of them. It is configured with the
+ * following system properties:
+ * <ul>
+ *     <li>concert.admission.maxConcurrent - how many bookings for a date are carried out at once (default 4)</li>
+ *     <li>concert.admission.maxQueue - how many bookings for a date can wait (default 50)</li>
+ *     <li>concert.admission.maxWaiting - how many bookings can wait across all dates (default twice maxQueue). It is
+ *     never less than maxQueue, so that a single date's queue can always fill up.</li>
+ *     <li>concert.admission.queueTimeoutSeconds - how long a booking can wait before it is turned away
+ *     (default 5)</li>
+ *     <li>concert.admission.retryAfterSeconds - how long clients that are turned away are told to wait before
+ *     trying again (default 2)</li>
+ * </ul>
+ */
+public class AdmissionController {
+
+    public static final String QUEUE_POSITION_HEADER = "X-Queue-Position";
+
+    private static AdmissionController _instance = null;
+
+    private final int maxConcurrent = Math.max(1, Integer.getInteger("concert.admission.maxConcurrent", 4));
+    private final int maxQueue = Integer.getInteger("concert.admission.maxQueue", 50);
+    private final int maxWaiting = Math.max(maxQueue, Integer.getInteger("concert.admission.maxWaiting", 2 * maxQueue));
+    private final long queueTimeoutSeconds = Long.getLong("concert.admission.queueTimeoutSeconds", 5);
+    private final long retryAfterSeconds = Long.getLong("concert.admission.retryAfterSeconds", 2);
+
+    private final ConcurrentMap<LocalDateTime, WaitingRoom> waitingRooms = new ConcurrentHashMap<>();
+
+    // the number of bookings waiting across all dates
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimedOut = new AtomicLong();
+
+    protected AdmissionController() {
+    }
+
+    public static synchronized AdmissionController instance() {
+        if (_instance == null) {
+            _instance = new AdmissionController();
+        }
+        return _instance;
+    }
+
+    /**
+     * Carries out a booking once it is its turn.
+     * @param date The concert date being booked. This must be a date that a concert is on, as each date's waiting
+     *             room is kept until the controller is cleared.
+     * @param booking Carries out the booking.
+     * @return The booking's response, with an X-Queue-Position header.
+     * @throws WebApplicationException with status 503 (Service Unavailable) if the booking was turned away.
+     */
+    public Response admit(LocalDateTime date, Supplier<Response> booking) {
+        WaitingRoom room = waitingRooms.computeIfAbsent(date, d -> new WaitingRoom(maxConcurrent));
+
+        // the number of bookings waiting ahead of this one
+        int ahead = 0;
+
+        // a timed tryAcquire (unlike tryAcquire()) doesn't jump ahead of the bookings that are waiting
+        if (!tryAcquire(room, 0)) {
+            int position = room.waiting.incrementAndGet();
+            ahead = position - 1;
+
+            if (waiting.incrementAndGet() > maxWaiting || position > maxQueue) {
+                waiting.decrementAndGet();
+                room.waiting.decrementAndGet();
+                rejectedQueueFull.incrementAndGet();
+                throw unavailable(room);
+            }
+
+            queued.incrementAndGet();
+            boolean acquired;
+            try {
+                acquired = tryAcquire(room, queueTimeoutSeconds);
+            } finally {
+                waiting.decrementAndGet();
+                room.waiting.decrementAndGet();
+            }
+
+            if (!acquired) {
+                rejectedTimedOut.incrementAndGet();
+                throw unavailable(room);
+            }
+        }
+
+        admitted.incrementAndGet();
+        try {
+            Response response = booking.get();
+            return Response.fromResponse(response).header(QUEUE_POSITION_HEADER, ahead).build();
+        } finally {
+            room.permits.release();
+        }
+    }
+
+    /**
+     * Forgets every date's waiting room, e.g. because the database has been reset and the dates may have changed.
+     * Bookings that are already in progress or waiting carry on in their old waiting room, and are still counted
+     * towards the bookings waiting across all dates until they finish.
+     */
+    public void clear() {
+        waitingRooms.clear();
+    }
+
+    /**
+     * @return How many bookings have been let in, had to wait, or been turned away, how many are waiting in total, and
+     * how many bookings are in progress and waiting for each date.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maxConcurrent", maxConcurrent);
+        metrics.put("maxQueue", maxQueue);
+        metrics.put("maxWaiting", maxWaiting);
+        metrics.put("waiting", waiting.get());
+        metrics.put("admitted", admitted.get());
+        metrics.put("queued", queued.get());
+        metrics.put("rejectedQueueFull", rejectedQueueFull.get());
+        metrics.put("rejectedTimedOut", rejectedTimedOut.get());
+
+        Map<String, Object> dates = new LinkedHashMap<>();
+        for (Map.Entry<LocalDateTime, WaitingRoom> entry : waitingRooms.entrySet()) {
+            Map<String, Object> room = new LinkedHashMap<>();
+            room.put("inProgress", maxConcurrent - entry.getValue().permits.availablePermits());
+            room.put("queueLength", entry.getValue().waiting.get());
+            dates.put(entry.getKey().toString(), room);
+        }
+        metrics.put("dates", dates);
+
+        return metrics;
+    }
+
+    private static boolean tryAcquire(WaitingRoom room, long timeoutSeconds) {
+        try {
+            return room.permits.tryAcquire(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private WebApplicationException unavailable(WaitingRoom room) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("queueLength", room.waiting.get());
+        body.put("retryAfterSeconds", retryAfterSeconds);
+
+        return new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                .type(MediaType.APPLICATION_JSON)
+                .entity(body)
+                .build());
+    }
+
+    private static class WaitingRoom {
+        // fair, so that waiting bookings are let in in the order they arrived
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private WaitingRoom(int maxConcurrent) {
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+    }
+}
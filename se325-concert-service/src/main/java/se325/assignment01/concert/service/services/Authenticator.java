@@ -0,0 +1,323 @@
+package se325.assignment01.concert.service.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se325.assignment01.concert.service.domain.Authentication;
+import se325.assignment01.concert.service.domain.User;
+import se325.assignment01.concert.service.util.ExpiringCache;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that issues the authentication tokens given to users when they log in, and checks the tokens sent
+ * back with later requests. The system property concert.auth.mode chooses how tokens work:
+ * <ul>
+ *     <li>db (the default) - tokens are random, and each one is stored in the AUTHENTICATIONS table along with its
+ *     user and expiry time. Checking a token looks it up there, unless it has been checked recently: valid tokens
+ *     are cached in memory along with their user's ID. A background thread deletes expired tokens from the table in
+ *     batches, so that it doesn't grow without bound.</li>
+ *     <li>signed - tokens carry the user's ID and an expiry time, signed with HMAC-SHA256. Checking a token only
+ *     verifies the signature and expiry, without going to the database, and nothing is stored when a user logs
+ *     in.</li>
+ * </ul>
+ * Signed tokens are configured with the following system properties:
+ * <ul>
+ *     <li>concert.auth.keys - the signing keys, as a comma-separated list of keyId:secret pairs. Key IDs can't contain
+ *     '.', and keys whose IDs do are ignored. New tokens are signed with the first key, and tokens signed with any of
+ *     the keys are accepted, so keys can be rotated by adding a new key to the front and removing the old one once its
+ *     tokens have expired. If no keys are given, a random key is generated, and tokens are only valid until the
+ *     service restarts.</li>
+ * </ul>
+ * Both kinds of token are valid for concert.auth.tokenTtlSeconds (default one day). Database tokens are configured
+ * with the following system properties:
+ * <ul>
+ *     <li>concert.auth.cache.maxEntries - the most tokens to cache; the least recently used are evicted first</li>
+ *     <li>concert.auth.cache.ttlSeconds - how long a token is cached for, at most</li>
+ *     <li>concert.auth.sweepIntervalSeconds - how often expired tokens are deleted</li>
+ *     <li>concert.auth.sweepBatchSize - how many expired tokens to delete in each transaction</li>
+ * </ul>
+ */
+public class Authenticator {
+    private static Logger LOGGER = LoggerFactory.getLogger(Authenticator.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static Authenticator _instance = null;
+
+    private final boolean signed = "signed".equals(System.getProperty("concert.auth.mode", "db"));
+    private final long tokenTtlSeconds = Long.getLong("concert.auth.tokenTtlSeconds", 24 * 60 * 60);
+    private final int sweepBatchSize = Integer.getInteger("concert.auth.sweepBatchSize", 500);
+
+    // token -> ID of the user it was issued to, for database tokens that are known to be valid
+    private final ExpiringCache<String, Long> tokenCache = new ExpiringCache<>(
+            Integer.getInteger("concert.auth.cache.maxEntries", 10000),
+            Long.getLong("concert.auth.cache.ttlSeconds", 300) * 1000);
+
+    private final AtomicLong expiredDeleted = new AtomicLong();
+
+    // key ID -> key, with the key to sign new tokens with first
+    private final Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+    private final String signingKeyId;
+
+    protected Authenticator() {
+        String configuredKeys = System.getProperty("concert.auth.keys", "");
+
+        for (String entry : configuredKeys.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+
+            String keyId = entry.substring(0, separator).trim();
+            if (keyId.contains(".")) {
+                // the parts of a token are separated by dots, so a key ID with one could never be read back.
+                LOGGER.warn("Ignoring signing key \"" + keyId + "\": key IDs can't contain '.'");
+                continue;
+            }
+
+            byte[] secret = entry.substring(separator + 1).trim().getBytes(StandardCharsets.UTF_8);
+            keys.put(keyId, new SecretKeySpec(secret, HMAC_ALGORITHM));
+        }
+
+        if (keys.isEmpty()) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            keys.put("generated", new SecretKeySpec(secret, HMAC_ALGORITHM));
+
+            if (signed) {
+                LOGGER.warn("No concert.auth.keys configured; signed tokens will not survive a restart");
+            }
+        }
+
+        signingKeyId = keys.keySet().iterator().next();
+
+        if (!signed) {
+            long sweepIntervalSeconds = Long.getLong("concert.auth.sweepIntervalSeconds", 60);
+
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "concert-auth-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public static synchronized Authenticator instance() {
+        if (_instance == null) {
+            _instance = new Authenticator();
+        }
+        return _instance;
+    }
+
+    /**
+     * Issues a new authentication token for a user who has just logged in. In db mode, the token is cached straight
+     * away, so that the user's first requests with it don't need the database either.
+     * @param em The EntityManager to store the token with, in its active transaction (db mode only).
+     * @param user The user that has logged in.
+     * @return The token to give to the user.
+     */
+    public String issueToken(EntityManager em, User user) {
+        if (!signed) {
+            String authToken = UUID.randomUUID().toString();
+            em.persist(new Authentication(authToken, user, LocalDateTime.now().plusSeconds(tokenTtlSeconds)));
+            tokenCache.put(authToken, user.getId(), tokenTtlSeconds * 1000);
+            return authToken;
+        }
+
+        String payload = signingKeyId + "." + user.getId() + "." + (Instant.now().getEpochSecond() + tokenTtlSeconds);
+        return payload + "." + sign(keys.get(signingKeyId), payload);
+    }
+
+    /**
+     * Finds the user that an authentication token was issued to.
+     * @param em The EntityManager to look the user up with, in its active transaction.
+     * @param authToken The token sent by the client.
+     * @return The user, or null if the token is not valid. In signed mode, or if the token was cached, the user is a
+     * reference that is only loaded from the database when its state is used.
+     */
+    public User authenticate(EntityManager em, String authToken) {
+        if (!signed) {
+            Long userId = tokenCache.get(authToken);
+            if (userId != null) {
+                return em.getReference(User.class, userId);
+            }
+
+            Authentication authentication = em.find(Authentication.class, authToken);
+            LocalDateTime now = LocalDateTime.now();
+
+            if (authentication == null || !authentication.getExpiresAt().isAfter(now)) {
+                return null;
+            }
+
+            // don't cache the token for longer than it is valid
+            User user = authentication.getUser();
+            tokenCache.put(authToken, user.getId(), Duration.between(now, authentication.getExpiresAt()).toMillis());
+            return user;
+        }
+
+        Long userId = verify(authToken);
+        return userId == null ? null : em.getReference(User.class, userId);
+    }
+
+    /**
+     * Checks an authentication token without an EntityManager of the caller's. Only tokens that aren't cached (in db
+     * mode) need the database, and they are then cached, so authenticating them again afterwards is cheap.
+     * @param authToken The token sent by the client.
+     * @return The ID of the user the token was issued to, or null if the token is not valid.
+     */
+    public Long authenticatedUserId(String authToken) {
+        if (signed) {
+            return verify(authToken);
+        }
+
+        Long userId = tokenCache.get(authToken);
+        if (userId != null) {
+            return userId;
+        }
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            User user = authenticate(em, authToken);
+            em.getTransaction().commit();
+            return user == null ? null : user.getId();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Forgets all cached tokens, e.g. because the database has been reset and they may have been deleted.
+     */
+    public void clear() {
+        tokenCache.clear();
+    }
+
+    /**
+     * @return The token mode, and how well the token cache is working.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("mode", signed ? "signed" : "db");
+        metrics.put("tokenCache", tokenCache.getMetrics());
+        metrics.put("expiredTokensDeleted", expiredDeleted.get());
+        return metrics;
+    }
+
+    /**
+     * Deletes all expired tokens from the database, a batch at a time, and from the token cache.
+     */
+    private void sweep() {
+        try {
+            int deleted;
+            do {
+                deleted = deleteExpired();
+                expiredDeleted.addAndGet(deleted);
+            } while (deleted == sweepBatchSize);
+
+            tokenCache.removeExpired();
+        } catch (RuntimeException e) {
+            // try again next time, e.g. if the database was being reset
+            LOGGER.warn("Failed to delete expired authentication tokens", e);
+        }
+    }
+
+    /**
+     * Deletes up to a batch of expired tokens from the database, in one transaction.
+     * @return The number of tokens deleted.
+     */
+    private int deleteExpired() {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+
+            List<String> expired = em.createQuery("SELECT auth.authToken " +
+                    "FROM Authentication auth " +
+                    "WHERE auth.expiresAt <= :now", String.class)
+                    .setParameter("now", LocalDateTime.now())
+                    .setMaxResults(sweepBatchSize)
+                    .getResultList();
+
+            if (!expired.isEmpty()) {
+                em.createQuery("DELETE FROM Authentication auth WHERE auth.authToken IN :tokens")
+                        .setParameter("tokens", expired)
+                        .executeUpdate();
+            }
+
+            em.getTransaction().commit();
+            return expired.size();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Checks the signature and expiry of a signed token.
+     * @return The ID of the user the token was issued to, or null if the token is not valid.
+     */
+    private Long verify(String authToken) {
+        String[] parts = authToken.split("\\.");
+        if (parts.length != 4) {
+            return null;
+        }
+
+        SecretKeySpec key = keys.get(parts[0]);
+        if (key == null) {
+            return null;
+        }
+
+        String payload = parts[0] + "." + parts[1] + "." + parts[2];
+        byte[] expected = sign(key, payload).getBytes(StandardCharsets.US_ASCII);
+
+        // compare in constant time, so that the signature can't be guessed a byte at a time
+        if (!MessageDigest.isEqual(expected, parts[3].getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+
+        try {
+            long userId = Long.parseLong(parts[1]);
+            long expiresAt = Long.parseLong(parts[2]);
+
+            return expiresAt > Instant.now().getEpochSecond() ? userId : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String sign(SecretKeySpec key, String payload) {
+        try {
+            // Macs aren't thread-safe, so each signature gets its own
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.common.dto.SeatAvailabilityDTO;
+import se325.assignment01.concert.service.util.SeatAvailability;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseBroadcaster;
+import javax.ws.rs.sse.SseEventSink;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton class that streams seat availability for concert dates to clients as Server-Sent Events. A client that
+ * opens a stream is sent a "snapshot" event with every seat that is booked, and then a "booked" event with the newly
+ * booked seats each time bookings for that date are made, for as long as it stays connected. Only committed bookings
+ * are streamed: seats that are held, or whose bookings are still in progress, may yet be released, so they aren't
+ * sent until they are booked.
+ * <p>
+ * Booked seats are collected per date as bookings commit, and sent when the {@link NotificationDispatcher} runs the
+ * notification for that date, so bookings that are coalesced into one notification are sent as one event.
+ */
+public class AvailabilityBroadcaster {
+
+    public static final String SNAPSHOT_EVENT = "snapshot";
+    public static final String BOOKED_EVENT = "booked";
+
+    private static AvailabilityBroadcaster _instance = null;
+
+    private final ConcurrentMap<LocalDateTime, Stream> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    protected AvailabilityBroadcaster() {
+    }
+
+    public static synchronized AvailabilityBroadcaster instance() {
+        if (_instance == null) {
+            _instance = new AvailabilityBroadcaster();
+        }
+        return _instance;
+    }
+
+    /**
+     * Starts streaming availability for a concert date to a client, beginning with a snapshot of the seats that
+     * are currently booked.
+     * @param sse Used to create the broadcaster and events for the date.
+     * @param eventSink The client's stream.
+     * @param concertId The concert being watched.
+     * @param date The date being watched.
+     * @param availability The availability of seats on that date.
+     */
+    public void register(Sse sse, SseEventSink eventSink, long concertId, LocalDateTime date,
+                         SeatAvailability availability) {
+        Stream stream = streams.computeIfAbsent(date, key -> new Stream(sse));
+
+        // register before taking the snapshot, so that no booking can fall
+        // between the two. At worst a seat is sent twice.
+        stream.broadcaster.register(eventSink);
+        openStreams.incrementAndGet();
+
+        eventSink.send(stream.event(SNAPSHOT_EVENT, new SeatAvailabilityDTO(concertId, date,
+                availability.getTotalSeats() - availability.getBookedSeats(),
+                availability.getBookedSeatLabels())));
+    }
+
+    /**
+     * Records seats whose bookings have been committed, to be sent with the next broadcast for their date.
+     * @param date The date the seats were booked on.
+     * @param seatLabels The labels of the booked seats.
+     */
+    public void seatsBooked(LocalDateTime date, List<String> seatLabels) {
+        Stream stream = streams.get(date);
+
+        // nobody has ever watched this date, so there is nobody to tell.
+        if (stream != null) {
+            stream.pendingBooked.addAll(seatLabels);
+        }
+    }
+
+    /**
+     * Sends the seats booked since the last broadcast to every client watching a concert date.
+     * @param concertId The concert that has changed.
+     * @param date The date that has changed.
+     * @param availability The availability of seats on that date.
+     */
+    public void broadcast(long concertId, LocalDateTime date, SeatAvailability availability) {
+        Stream stream = streams.get(date);
+
+        if (stream == null) {
+            return;
+        }
+
+        List<String> booked = new ArrayList<>();
+        String label;
+        while ((label = stream.pendingBooked.poll()) != null) {
+            booked.add(label);
+        }
+
+        if (!booked.isEmpty()) {
+            stream.broadcaster.broadcast(stream.event(BOOKED_EVENT, new SeatAvailabilityDTO(concertId, date,
+                    availability.getTotalSeats() - availability.getBookedSeats(), booked)));
+        }
+    }
+
+    /**
+     * Closes every availability stream, e.g. because the database has been reset and the seats that the clients were
+     * sent may no longer be booked.
+     */
+    public void clear() {
+        for (LocalDateTime date : streams.keySet()) {
+            Stream stream = streams.remove(date);
+            if (stream != null) {
+                stream.broadcaster.close();
+            }
+        }
+    }
+
+    /**
+     * @return Counters describing the open availability streams.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("openStreams", openStreams.get());
+        metrics.put("datesWatched", streams.size());
+        return metrics;
+    }
+
+    /**
+     * The clients watching a single concert date, and the seats booked since they were last updated.
+     */
+    private class Stream {
+        private final Sse sse;
+        private final SseBroadcaster broadcaster;
+        private final Queue<String> pendingBooked = new ConcurrentLinkedQueue<>();
+
+        private Stream(Sse sse) {
+            this.sse = sse;
+            this.broadcaster = sse.newBroadcaster();
+
+            broadcaster.onClose(eventSink -> openStreams.decrementAndGet());
+            broadcaster.onError((eventSink, throwable) -> eventSink.close());
+        }
+
+        private OutboundSseEvent event(String name, SeatAvailabilityDTO availabilityDTO) {
+            return sse.newEventBuilder()
+                    .name(name)
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(SeatAvailabilityDTO.class, availabilityDTO)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package se325.assignment01.concert.service.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import se325.assignment01.concert.service.util.Page;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Singleton class that holds the catalogue (concert and performer) responses already rendered as JSON. The catalogue
+ * only changes when the database is reloaded, so once a response has been built it can be sent again as it is,
+ * without loading entities, mapping them to DTOs or serializing them.
+ * <p>
+ * Each response has a strong ETag computed from its bytes. Clients that send a matching If-None-Match header get a
+ * 304 (Not Modified) response with no body.
+ * <p>
+ * At most concert.catalogue.cache.maxEntries responses (default 1000) are kept. Once the cache is full, further
+ * responses are rendered for each request instead, so that paging with arbitrary cursors can't grow it forever.
+ */
+public class CatalogueCache {
+
+    private static CatalogueCache _instance = null;
+
+    private final int maxEntries = Integer.getInteger("concert.catalogue.cache.maxEntries", 1000);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<String, RenderedResponse> responses = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    protected CatalogueCache() {
+    }
+
+    public static synchronized CatalogueCache instance() {
+        if (_instance == null) {
+            _instance = new CatalogueCache();
+        }
+        return _instance;
+    }
+
+    /**
+     * Builds the response for a catalogue request, rendering its body only if it hasn't been rendered before.
+     * @param key Identifies the response, e.g. its path.
+     * @param request The request, used to check the client's If-None-Match header.
+     * @param loader Loads the DTO(s) to send. This may throw a WebApplicationException (e.g. for a 404), in which
+     *               case nothing is cached.
+     * @return A 200 response with the rendered body and its ETag, or a 304 response if the client already has it.
+     */
+    public Response respond(String key, Request request, Supplier<Object> loader) {
+        RenderedResponse rendered = lookup(key, () -> render(loader.get(), null));
+
+        Response.ResponseBuilder notModifiedResponse = request.evaluatePreconditions(rendered.etag);
+
+        if (notModifiedResponse != null) {
+            notModified.incrementAndGet();
+            return notModifiedResponse.build();
+        }
+
+        return Response.ok(rendered.body, MediaType.APPLICATION_JSON_TYPE).tag(rendered.etag).build();
+    }
+
+    /**
+     * Builds the response for a page of a catalogue list, rendering its body only if it hasn't been rendered before.
+     * If there is another page, the response has a Link header to it with rel="next".
+     * @param key Identifies the response, e.g. its path and paging parameters.
+     * @param request The request, used to check the client's If-None-Match header.
+     * @param uriInfo The request's URI, used to build the link to the next page.
+     * @param loader Loads the page of DTOs to send.
+     * @return A 200 response with the rendered page and its ETag, or a 304 response if the client already has it.
+     */
+    public Response respondPage(String key, Request request, UriInfo uriInfo, Supplier<Page<?>> loader) {
+        RenderedResponse rendered = lookup(key, () -> {
+            Page<?> page = loader.get();
+            return render(page.getItems(), page.getNextCursor());
+        });
+
+        Response.ResponseBuilder builder = request.evaluatePreconditions(rendered.etag);
+
+        if (builder != null) {
+            notModified.incrementAndGet();
+        } else {
+            builder = Response.ok(rendered.body, MediaType.APPLICATION_JSON_TYPE).tag(rendered.etag);
+        }
+
+        if (rendered.nextCursor != null) {
+            builder.link(Page.nextUri(uriInfo, rendered.nextCursor), "next");
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Discards every rendered response. This must be called whenever the catalogue is reloaded.
+     */
+    public void invalidate() {
+        responses.clear();
+    }
+
+    /**
+     * @return Counters describing how often responses are served from the cache.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("entries", responses.size());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("notModified", notModified.get());
+        return metrics;
+    }
+
+    private RenderedResponse lookup(String key, Supplier<RenderedResponse> renderer) {
+        RenderedResponse rendered = responses.get(key);
+
+        if (rendered != null) {
+            hits.incrementAndGet();
+            return rendered;
+        }
+
+        misses.incrementAndGet();
+
+        // render outside of the map, so that a slow load doesn't hold up other keys. Two requests may both
+        // render the same response, but they will produce the same bytes.
+        RenderedResponse created = renderer.get();
+
+        if (responses.size() >= maxEntries) {
+            return created;
+        }
+
+        rendered = responses.putIfAbsent(key, created);
+        return rendered == null ? created : rendered;
+    }
+
+    private RenderedResponse render(Object entity, Long nextCursor) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(entity);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+
+            return new RenderedResponse(body,
+                    new EntityTag(Base64.getUrlEncoder().withoutPadding().encodeToString(digest)), nextCursor);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * A response body rendered as JSON, its ETag, and the cursor for the next page if it is a page of a list.
+     */
+    private static class RenderedResponse {
+        private final byte[] body;
+        private final EntityTag etag;
+        private final Long nextCursor;
+
+        private RenderedResponse(byte[] body, EntityTag etag, Long nextCursor) {
+            this.body = body;
+            this.etag = etag;
+            this.nextCursor = nextCursor;
+        }
+    }
+}
@@ -1,43 +1,77 @@
 package se325.assignment01.concert.service.services;
 
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
 import se325.assignment01.concert.common.dto.*;
 import se325.assignment01.concert.service.domain.*;
+import se325.assignment01.concert.service.jaxrs.LocalDateTimeParam;
+import se325.assignment01.concert.service.jaxrs.RateLimit;
+import se325.assignment01.concert.service.jaxrs.RateLimited;
 import se325.assignment01.concert.service.mapper.*;
+import se325.assignment01.concert.service.util.Page;
+import se325.assignment01.concert.service.util.SeatAllocator;
+import se325.assignment01.concert.service.util.SeatAvailability;
+import se325.assignment01.concert.service.util.TheatreLayout;
 
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
 import javax.ws.rs.*;
 import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Web service resource implementation for the Concert application. An instance
  * of this class handles all HTTP requests for the Concert Web service.
+ * <p>
+ * Concert and performer (catalogue) responses are served from the
+ * {@link CatalogueCache}, so they are only loaded and rendered once.
  */
 @Path("/concert-service")
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 public class ConcertResource {
 
-    private static final List<Subscription> subscriptions = new ArrayList<>();
+    private static final SeatClaimStrategy seatClaimStrategy = SeatClaimStrategy.configured();
+
+    // how many times to search for the best available seats, if other
+    // requests keep claiming the seats that are found first.
+    private static final int MAX_ALLOCATION_ATTEMPTS = 10;
 
     /**
      * Get a particular concert represented by a ConcertDTO.
      * @param id The unique identifier of the concert to get.
+     * @param request The request, to check whether the client already has
+     *                the concert.
      * @return A Response containing a ConcertDTO that represents
      * the concert that we need to get.
      */
     @GET
     @Path("/concerts/{id}")
-    public Response getSingleConcert(@PathParam("id")long id) {
+    public Response getSingleConcert(@PathParam("id")long id, @Context Request request) {
+        return CatalogueCache.instance().respond("concerts/" + id, request, () -> loadConcert(id));
+    }
+
+    /**
+     * Load a particular concert from the database.
+     * @param id The unique identifier of the concert to load.
+     * @return The concert as a ConcertDTO.
+     */
+    private ConcertDTO loadConcert(long id) {
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
@@ -47,62 +81,142 @@ public class ConcertResource {
                 "LEFT OUTER JOIN FETCH concert.performers " +
                 "WHERE concert.id = :id", Concert.class)
                 .setParameter("id", id)
+                // the catalogue doesn't change, so the query's results can be
+                // cached along with the concerts themselves.
+                .setHint(QueryHints.CACHEABLE, true)
                 .getResultList();
 
-        em.getTransaction().commit();
-        em.close();
-
         if (concertList == null || concertList.isEmpty()) {
+            em.getTransaction().rollback();
+            em.close();
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
 
-        Concert concert = concertList.get(0);
+        // convert to DTO while the dates and performers can still be loaded:
+        // if the query's results come from the query cache, the concert's
+        // collections are not fetched with it.
+        ConcertDTO concertDTO = ConcertMapper.toDto(concertList.get(0));
 
-        return Response.ok(ConcertMapper.toDto(concert)).build();
+        em.getTransaction().commit();
+        em.close();
+
+        return concertDTO;
     }
 
     /**
      * Get all the concerts that are in the database for this Concert
-     * Application.
-     * @return A list of ConcertDTOs that represent all the concerts
-     * in the application.
+     * Application, a page at a time.
+     * @param cursor The ID of the last concert in the previous page, or 0 for
+     *               the first page.
+     * @param limit The most concerts to return.
+     * @param request The request, to check whether the client already has
+     *                the concerts.
+     * @param uriInfo The request URI, to link to the next page.
+     * @return A list of ConcertDTOs that represent the concerts after the
+     * cursor, with a Link header to the next page if there is one.
      */
     @GET
     @Path("/concerts/")
-    public Response getAllConcerts() {
+    public Response getAllConcerts(@QueryParam(Page.CURSOR_PARAM) @DefaultValue("0") long cursor,
+                                   @QueryParam(Page.LIMIT_PARAM) Integer limit,
+                                   @Context Request request, @Context UriInfo uriInfo) {
+        int size = Page.size(limit);
+        return CatalogueCache.instance().respondPage(pageKey("concerts", cursor, size), request, uriInfo,
+                () -> loadAllConcerts(cursor, size));
+    }
+
+    /**
+     * Load a page of concerts from the database.
+     * @param cursor The ID of the last concert in the previous page.
+     * @param size The most concerts to load.
+     * @return A page of ConcertDTOs for the concerts after the cursor.
+     */
+    private Page<ConcertDTO> loadAllConcerts(long cursor, int size) {
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
-        List<Concert> concertList = em.createQuery("SELECT DISTINCT concert " +
+        // Find the IDs in the page first. Limiting the concert query itself
+        // wouldn't limit the subselects that load the dates and performers,
+        // as they repeat the query without its limit.
+        Page<Long> idPage = Page.of(em.createQuery("SELECT concert.id " +
                 "FROM Concert concert " +
-                "LEFT OUTER JOIN FETCH concert.dates " +
-                "LEFT OUTER JOIN FETCH concert.performers", Concert.class)
-                .getResultList();
+                "WHERE concert.id > :cursor " +
+                "ORDER BY concert.id", Long.class)
+                .setParameter("cursor", cursor)
+                .setMaxResults(size + 1)
+                .setHint(QueryHints.CACHEABLE, true)
+                .getResultList(), size, Long::longValue);
+
+        if (idPage.getItems().isEmpty()) {
+            em.getTransaction().commit();
+            em.close();
+            return idPage.withItems(new ArrayList<>());
+        }
 
-        em.getTransaction().commit();
-        em.close();
+        // Don't join fetch the dates and performers, as that returns a row
+        // for every date and performer combination of every concert. They
+        // are loaded by subselect (one query each for all the concerts) when
+        // the first concert is converted below.
+        List<Concert> concertList = em.createQuery("SELECT concert " +
+                "FROM Concert concert " +
+                "WHERE concert.id IN :ids " +
+                "ORDER BY concert.id", Concert.class)
+                .setParameter("ids", idPage.getItems())
+                .setHint(QueryHints.CACHEABLE, true)
+                .getResultList();
 
-        // convert to DTO
+        // convert to DTO while the dates and performers can still be loaded
         List<ConcertDTO> concertDTOList = new ArrayList<>();
         for (Concert concert: concertList) {
             concertDTOList.add(ConcertMapper.toDto(concert));
         }
 
-        return Response.ok(concertDTOList).build();
+        em.getTransaction().commit();
+        em.close();
+
+        return idPage.withItems(concertDTOList);
     }
 
     /**
-     * Get the summaries of all concerts that are in the application.
-     * @return Summaries of all concerts.
+     * Get the summaries of all concerts that are in the application, a page
+     * at a time.
+     * @param cursor The ID of the last concert in the previous page, or 0 for
+     *               the first page.
+     * @param limit The most summaries to return.
+     * @param request The request, to check whether the client already has
+     *                the summaries.
+     * @param uriInfo The request URI, to link to the next page.
+     * @return Summaries of the concerts after the cursor, with a Link header
+     * to the next page if there is one.
      */
     @GET
     @Path("/concerts/summaries")
-    public Response getAllConcertSummaries() {
+    public Response getAllConcertSummaries(@QueryParam(Page.CURSOR_PARAM) @DefaultValue("0") long cursor,
+                                           @QueryParam(Page.LIMIT_PARAM) Integer limit,
+                                           @Context Request request, @Context UriInfo uriInfo) {
+        int size = Page.size(limit);
+        return CatalogueCache.instance().respondPage(pageKey("concerts/summaries", cursor, size), request, uriInfo,
+                () -> loadAllConcertSummaries(cursor, size));
+    }
+
+    /**
+     * Load a page of concert summaries from the database.
+     * @param cursor The ID of the last concert in the previous page.
+     * @param size The most summaries to load.
+     * @return Summaries of the concerts after the cursor.
+     */
+    private Page<ConcertSummaryDTO> loadAllConcertSummaries(long cursor, int size) {
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
         List<Concert> concertList = em.createQuery("SELECT concert " +
-                "FROM Concert concert", Concert.class).getResultList();
+                "FROM Concert concert " +
+                "WHERE concert.id > :cursor " +
+                "ORDER BY concert.id", Concert.class)
+                .setParameter("cursor", cursor)
+                .setMaxResults(size + 1)
+                .setHint(QueryHints.CACHEABLE, true)
+                .getResultList();
 
         em.getTransaction().commit();
         em.close();
@@ -113,17 +227,28 @@ public class ConcertResource {
             concertSummaryDTOList.add(ConcertSummaryMapper.toDto(concert));
         }
 
-        return Response.ok(concertSummaryDTOList).build();
+        return Page.of(concertSummaryDTOList, size, ConcertSummaryDTO::getId);
     }
 
     /**
      * Get a particular performer from the database.
      * @param id The unique identifer of the performer to get.
+     * @param request The request, to check whether the client already has
+     *                the performer.
      * @return The performer as a PerformerDTO.
      */
     @GET
     @Path("/performers/{id}")
-    public Response getSinglePerformer(@PathParam("id")long id) {
+    public Response getSinglePerformer(@PathParam("id")long id, @Context Request request) {
+        return CatalogueCache.instance().respond("performers/" + id, request, () -> loadPerformer(id));
+    }
+
+    /**
+     * Load a particular performer from the database.
+     * @param id The unique identifer of the performer to load.
+     * @return The performer as a PerformerDTO.
+     */
+    private PerformerDTO loadPerformer(long id) {
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
@@ -136,21 +261,48 @@ public class ConcertResource {
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
 
-        return Response.ok(PerformerMapper.toDto(performer)).build();
+        return PerformerMapper.toDto(performer);
     }
 
     /**
-     * Get all performers in the application.
-     * @return A list of all performers as a List<PerformerDTO>.
+     * Get all performers in the application, a page at a time.
+     * @param cursor The ID of the last performer in the previous page, or 0
+     *               for the first page.
+     * @param limit The most performers to return.
+     * @param request The request, to check whether the client already has
+     *                the performers.
+     * @param uriInfo The request URI, to link to the next page.
+     * @return The performers after the cursor as a List<PerformerDTO>, with a
+     * Link header to the next page if there is one.
      */
     @GET
     @Path("/performers")
-    public Response getAllPerformers() {
+    public Response getAllPerformers(@QueryParam(Page.CURSOR_PARAM) @DefaultValue("0") long cursor,
+                                     @QueryParam(Page.LIMIT_PARAM) Integer limit,
+                                     @Context Request request, @Context UriInfo uriInfo) {
+        int size = Page.size(limit);
+        return CatalogueCache.instance().respondPage(pageKey("performers", cursor, size), request, uriInfo,
+                () -> loadAllPerformers(cursor, size));
+    }
+
+    /**
+     * Load a page of performers from the database.
+     * @param cursor The ID of the last performer in the previous page.
+     * @param size The most performers to load.
+     * @return The performers after the cursor as a Page<PerformerDTO>.
+     */
+    private Page<PerformerDTO> loadAllPerformers(long cursor, int size) {
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
         List<Performer> performerList = em.createQuery("SELECT performer " +
-                "FROM Performer performer", Performer.class).getResultList();
+                "FROM Performer performer " +
+                "WHERE performer.id > :cursor " +
+                "ORDER BY performer.id", Performer.class)
+                .setParameter("cursor", cursor)
+                .setMaxResults(size + 1)
+                .setHint(QueryHints.CACHEABLE, true)
+                .getResultList();
 
         em.getTransaction().commit();
         em.close();
@@ -161,7 +313,7 @@ public class ConcertResource {
             performerDTOList.add(PerformerMapper.toDto(performer));
         }
 
-        return Response.ok(performerDTOList).build();
+        return Page.of(performerDTOList, size, PerformerDTO::getId);
     }
 
     /**
@@ -189,11 +341,9 @@ public class ConcertResource {
         }
 
         // valid login, create cookie
-        String authToken = UUID.randomUUID().toString();
+        String authToken = Authenticator.instance().issueToken(em, userList.get(0));
         NewCookie newCookie = new NewCookie("auth", authToken);
 
-        // add cookie to database and connect with user
-        em.persist(new Authentication(authToken, userList.get(0)));
         em.getTransaction().commit();
         em.close();
 
@@ -204,66 +354,480 @@ public class ConcertResource {
     /**
      * Make a booking for a particular user.
      * @param cookie The cookie that authenticates the user.
+     * @param idempotencyKey Optional key chosen by the client. If a booking
+     *                       request with the same key has already been
+     *                       made, its outcome is returned again instead of
+     *                       booking again (see {@link IdempotencyStore}).
      * @param bookingRequestDTO Contains booking information for the
      *                          booking to make.
      * @return A URI link to get the new booking that was made.
      */
     @POST
     @Path("/bookings")
-    public Response book(@CookieParam("auth") Cookie cookie, BookingRequestDTO bookingRequestDTO) {
+    @RateLimited(RateLimit.BOOKINGS)
+    public Response book(@CookieParam("auth") Cookie cookie,
+                         @HeaderParam(IdempotencyStore.HEADER) String idempotencyKey,
+                         BookingRequestDTO bookingRequestDTO) {
         if (cookie == null) {
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
 
+        // authenticate before the key is recorded, so that its outcome is
+        // kept for the user rather than for whatever the cookie says.
         String authToken = cookie.getValue();
+        long userId = authenticatedUserId(authToken);
+        List<Object> fingerprint = Arrays.asList(bookingRequestDTO.getConcertId(), bookingRequestDTO.getDate(),
+                bookingRequestDTO.getSeatLabels());
+
+        return IdempotencyStore.instance().execute("user " + userId, idempotencyKey, fingerprint,
+                () -> admit(bookingRequestDTO.getDate(), () -> book(authToken, bookingRequestDTO)));
+    }
+
+    /**
+     * Helper method to check a user's token before anything is done for
+     * their request.
+     * @param authToken The token that authenticates the user.
+     * @return The ID of the user.
+     * @throws WebApplicationException with status 401 (Unauthorized) if the
+     * token is not valid.
+     */
+    private static long authenticatedUserId(String authToken) {
+        Long userId = Authenticator.instance().authenticatedUserId(authToken);
+        if (userId == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+        return userId;
+    }
+
+    /**
+     * Helper method to carry out a booking once the waiting room for its
+     * date lets it in (see {@link AdmissionController}). Only authenticated
+     * users should get a place in the waiting room, so the caller must have
+     * checked the user's token already. Bookings for dates that no concert
+     * is on are carried out straight away, to be rejected.
+     * @param date The date being booked.
+     * @param booking Carries out the booking.
+     * @return The booking's response.
+     */
+    private Response admit(LocalDateTime date, Supplier<Response> booking) {
+        if (date == null || SeatAvailabilityManager.instance().forDate(date) == null) {
+            return booking.get();
+        }
+
+        return AdmissionController.instance().admit(date, booking);
+    }
+
+    /**
+     * Helper method to make a booking, once its idempotency key (if any) has
+     * been checked.
+     * @param authToken The token that authenticates the user.
+     * @param bookingRequestDTO Contains booking information for the
+     *                          booking to make.
+     * @return A URI link to get the new booking that was made.
+     */
+    private Response book(String authToken, BookingRequestDTO bookingRequestDTO) {
+
+        // Look up the date's seats before taking a connection: if they have
+        // to be created, that needs a connection of its own, and requests
+        // for the date wait for it while holding theirs.
+        SeatAvailability availability = SeatAvailabilityManager.instance().forDate(bookingRequestDTO.getDate());
 
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
         // authenticate user
-        Authentication authentication = em.find(Authentication.class, authToken);
+        User user = Authenticator.instance().authenticate(em, authToken);
 
-        if (authentication == null) {
+        if (user == null) {
             em.getTransaction().rollback();
             em.close();
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
 
-        User user = authentication.getUser();
-
         Concert concert = findConcertOnDate(em, bookingRequestDTO.getConcertId(),
                 bookingRequestDTO.getDate());
 
-        // Make sure that the user does not change during the time of making
-        // the booking for them. The user has a list of bookings that could
-        // change, and we want to make sure that other concurrent accesses
-        // to the user (e.g. concurrently adding another booking), doesn't
-        // cause data integrity violations.
-        em.lock(user, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        int[] seatIndices = toSeatIndices(em, bookingRequestDTO.getSeatLabels());
 
-        Booking booking = makeBooking(bookingRequestDTO, em, concert, user);
-        em.persist(booking);
+        if (availability == null) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
 
-        try {
-            em.getTransaction().commit();
-        } catch (Exception e){
-            // in the case of any exception (especially an optimistic lock
-            // exception), we need to roll back our changes.
+        // Claim the seats in memory first. If any of them are already taken
+        // there is no point going to the database, and only the request that
+        // wins the claim goes on to write the seats.
+        if (!availability.tryClaim(seatIndices)) {
             em.getTransaction().rollback();
-            throw e;
-        } finally {
             em.close();
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+
+        return Response.created(bookClaimedSeats(em, user.getId(), bookingRequestDTO, availability, seatIndices))
+                .build();
+    }
+
+    /**
+     * Helper method to book seats that have already been claimed in memory,
+     * either by the booking request itself or by a hold that is being
+     * confirmed. If the booking fails, the seats are released.
+     * @param em Entity Manager whose transaction has been begun, to make the
+     *           booking with. It is closed by the time this returns.
+     * @param userId Identifier of the user to book for.
+     * @param bookingRequestDTO The concert, date and seats to book.
+     * @param availability The availability that the seats are claimed in.
+     * @param seatIndices Positions of the claimed seats.
+     * @return A URI link to get the new booking.
+     */
+    private URI bookClaimedSeats(EntityManager em, long userId, BookingRequestDTO bookingRequestDTO,
+                                      SeatAvailability availability, int[] seatIndices) {
+        long concertId = bookingRequestDTO.getConcertId();
+        Booking booking;
+
+        try {
+            // If the user was changed by another transaction at the same time
+            // (e.g. they are booking other seats from another tab), the
+            // booking is retried, in a new transaction. Our seats are still
+            // claimed in memory, so only the booking itself is redone.
+            booking = TransactionRetrier.instance().execute(em, User.class, attemptEm -> {
+                User bookingUser = attemptEm.getReference(User.class, userId);
+
+                // Make sure that the user does not change during the time of making
+                // the booking for them. The user has a list of bookings that could
+                // change, and we want to make sure that other concurrent accesses
+                // to the user (e.g. concurrently adding another booking), doesn't
+                // cause data integrity violations.
+                attemptEm.lock(bookingUser, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+
+                Booking newBooking = makeBooking(bookingRequestDTO, attemptEm,
+                        attemptEm.getReference(Concert.class, concertId), bookingUser);
+                attemptEm.persist(newBooking);
+                return newBooking;
+            });
+
+            availability.recordBooked(seatIndices);
+        } catch (RuntimeException e) {
+            // in the case of any exception, our changes have been rolled back,
+            // so give the seats we claimed back so that others can book them.
+            availability.release(seatIndices);
+
+            if (TransactionRetrier.isVersionConflict(e, User.class)) {
+                // the user kept changing under us; the client can try again.
+                throw new WebApplicationException(Response.Status.CONFLICT);
+            }
+            if (TransactionRetrier.isVersionConflict(e, null)) {
+                // another transaction booked one of the seats first.
+                throw new WebApplicationException(Response.Status.FORBIDDEN);
+            }
+            throw e;
         }
 
         // our bookings have changed so update our subscribers accordingly.
-        updateConcertSubscriptions(concert);
+        // This happens on the dispatcher's thread, so that we don't keep the
+        // client waiting while every subscriber is notified.
+        LocalDateTime date = bookingRequestDTO.getDate();
+        AvailabilityBroadcaster.instance().seatsBooked(date, bookingRequestDTO.getSeatLabels());
+        NotificationDispatcher.instance().dispatch(date, () -> {
+            updateConcertSubscriptions(concertId, date);
+            AvailabilityBroadcaster.instance().broadcast(concertId, date, availability);
+        });
+
+        // the booking has been committed, so there is nothing left to roll
+        // back; a booking's id always makes a valid URI.
+        return URI.create("concert-service/bookings/" + booking.getId());
+    }
+
+    /**
+     * Book the best seats available for a party, rather than particular
+     * seats: a block of adjacent seats as close to the front and the middle
+     * of a row as possible, or if there is no such block, seats split across
+     * adjacent rows (see {@link SeatAllocator}).
+     * @param cookie The cookie that authenticates the user.
+     * @param bestAvailableRequestDTO The concert, date and number of seats to
+     *                                book, and optionally the price band to
+     *                                book them in.
+     * @return The new booking as a BookingDTO, with a URI link to it.
+     */
+    @POST
+    @Path("/bookings/best-available")
+    @RateLimited(RateLimit.BOOKINGS)
+    public Response bookBestAvailable(@CookieParam("auth") Cookie cookie,
+                                      BestAvailableRequestDTO bestAvailableRequestDTO) {
+        if (cookie == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        authenticatedUserId(cookie.getValue());
+        return admit(bestAvailableRequestDTO.getDate(),
+                () -> bookBestAvailable(cookie.getValue(), bestAvailableRequestDTO));
+    }
+
+    /**
+     * Helper method to book the best seats available for a party, once the
+     * waiting room for the date has let the booking in.
+     * @param authToken The token that authenticates the user.
+     * @param bestAvailableRequestDTO The concert, date and number of seats to
+     *                                book, and optionally the price band.
+     * @return The new booking as a BookingDTO, with a URI link to it.
+     */
+    private Response bookBestAvailable(String authToken, BestAvailableRequestDTO bestAvailableRequestDTO) {
+        LocalDateTime date = bestAvailableRequestDTO.getDate();
+
+        // as for bookings, look up the date's seats before taking a connection.
+        SeatAvailability availability = SeatAvailabilityManager.instance().forDate(date);
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        em.getTransaction().begin();
+
+        User user = Authenticator.instance().authenticate(em, authToken);
+
+        if (user == null) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        findConcertOnDate(em, bestAvailableRequestDTO.getConcertId(), date);
+
+        String priceBandName = bestAvailableRequestDTO.getPriceBand();
+        TheatreLayout.PriceBand priceBand = priceBandName == null ? null :
+                TheatreLayout.priceBandNamed(priceBandName);
+
+        // a party can't be bigger than the price band it asks for, or the
+        // whole theatre if it doesn't ask for one.
+        int maxSeats = priceBand == null ? TheatreLayout.NUM_SEATS_IN_THEATRE :
+                priceBand.numRows * TheatreLayout.NUM_SEATS_PER_ROW;
+
+        if (availability == null || bestAvailableRequestDTO.getNumSeats() < 1 ||
+                bestAvailableRequestDTO.getNumSeats() > maxSeats ||
+                (priceBandName != null && priceBand == null)) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        // The search may find seats that are claimed by another request
+        // before we can claim them, in which case we search again.
+        int[] seatIndices = null;
+        for (int attempt = 0; attempt < MAX_ALLOCATION_ATTEMPTS && seatIndices == null; attempt++) {
+            int[] found = SeatAllocator.findBestAvailable(availability, bestAvailableRequestDTO.getNumSeats(),
+                    priceBand);
+
+            if (found == null) {
+                break;
+            }
+            if (availability.tryClaim(found)) {
+                seatIndices = found;
+            }
+        }
+
+        if (seatIndices == null) {
+            // there aren't enough seats left together.
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+
+        List<String> seatLabels = new ArrayList<>();
+        List<SeatDTO> seatDTOs = new ArrayList<>();
+        for (int seatIndex : seatIndices) {
+            seatLabels.add(TheatreLayout.labelOf(seatIndex));
+            seatDTOs.add(new SeatDTO(TheatreLayout.labelOf(seatIndex),
+                    TheatreLayout.priceBandOfRow(seatIndex / TheatreLayout.NUM_SEATS_PER_ROW).price));
+        }
+
+        BookingRequestDTO bookingRequestDTO = new BookingRequestDTO(bestAvailableRequestDTO.getConcertId(), date,
+                seatLabels);
+        URI bookingUri = bookClaimedSeats(em, user.getId(), bookingRequestDTO, availability, seatIndices);
+
+        return Response.created(bookingUri)
+                .entity(new BookingDTO(bestAvailableRequestDTO.getConcertId(), date, seatDTOs))
+                .build();
+    }
+
+    /**
+     * Hold seats for a particular user for a while, so that nobody else can
+     * book them while the user decides whether to book them. The hold is
+     * then confirmed to book the seats, or released to give them back; if
+     * neither happens, it expires and the seats are given back anyway. A
+     * user can only hold so many seats at once (see {@link SeatHoldManager}).
+     * @param cookie The cookie that authenticates the user.
+     * @param holdRequestDTO The concert, date and seats to hold, and for how
+     *                       long.
+     * @return The new hold as a SeatHoldDTO, with a URI link to it.
+     */
+    @POST
+    @Path("/holds")
+    @RateLimited(RateLimit.BOOKINGS)
+    public Response holdSeats(@CookieParam("auth") Cookie cookie, SeatHoldRequestDTO holdRequestDTO) {
+        if (cookie == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        // as for bookings, look up the date's seats before taking a connection.
+        SeatAvailability availability = SeatAvailabilityManager.instance().forDate(holdRequestDTO.getDate());
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        em.getTransaction().begin();
+
+        User user = Authenticator.instance().authenticate(em, cookie.getValue());
 
+        if (user == null) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        findConcertOnDate(em, holdRequestDTO.getConcertId(), holdRequestDTO.getDate());
+        int[] seatIndices = toSeatIndices(em, holdRequestDTO.getSeatLabels());
+        long userId = user.getId();
+
+        em.getTransaction().commit();
+        em.close();
+
+        if (availability == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        // the seats are taken, either booked or held by someone else.
+        if (!availability.tryClaim(seatIndices)) {
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
+        }
+
+        SeatHoldManager.SeatHold hold = SeatHoldManager.instance().hold(userId, holdRequestDTO.getConcertId(),
+                holdRequestDTO.getDate(), holdRequestDTO.getSeatLabels(), seatIndices, availability,
+                holdRequestDTO.getHoldSeconds());
+
+        if (hold == null) {
+            // the user is already holding as many seats as they may.
+            availability.release(seatIndices);
+            throw new WebApplicationException(Response.Status.CONFLICT);
+        }
+
+        return Response.created(URI.create("concert-service/holds/" + hold.getId())).entity(hold.toDto()).build();
+    }
+
+    /**
+     * Book the seats in a hold. The hold must belong to the user, and must
+     * not have expired.
+     * @param cookie The cookie that authenticates the user.
+     * @param id Identifier of the hold.
+     * @return A URI link to get the new booking that was made.
+     */
+    @POST
+    @Path("/holds/{id}/confirm")
+    @RateLimited(RateLimit.BOOKINGS)
+    public Response confirmHold(@CookieParam("auth") Cookie cookie, @PathParam("id") String id) {
+        if (cookie == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        // confirming books the hold's seats, so it waits its turn with the
+        // other bookings for the date.
+        authenticatedUserId(cookie.getValue());
+        SeatHoldManager.SeatHold hold = SeatHoldManager.instance().get(id);
+        return admit(hold == null ? null : hold.getDate(),
+                () -> confirmHold(cookie.getValue(), id));
+    }
+
+    /**
+     * Helper method to book the seats in a hold, once the waiting room for
+     * its date has let the booking in.
+     * @param authToken The token that authenticates the user.
+     * @param id Identifier of the hold.
+     * @return A URI link to get the new booking that was made.
+     */
+    private Response confirmHold(String authToken, String id) {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        em.getTransaction().begin();
+
+        User user = Authenticator.instance().authenticate(em, authToken);
+
+        if (user == null) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        SeatHoldManager.SeatHold hold;
         try {
-            return Response.created(new URI("concert-service/bookings/" + booking.getId())).build();
-        } catch (URISyntaxException e) {
+            hold = findOwnHold(id, user.getId());
+        } catch (WebApplicationException e) {
+            em.getTransaction().rollback();
+            em.close();
+            throw e;
+        }
+
+        // take the hold, so that it can't expire while we book its seats.
+        if (!SeatHoldManager.instance().confirm(hold)) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+
+        BookingRequestDTO bookingRequestDTO = new BookingRequestDTO(hold.getConcertId(), hold.getDate(),
+                hold.getSeatLabels());
+        return Response.created(bookClaimedSeats(em, user.getId(), bookingRequestDTO, hold.getAvailability(),
+                hold.getSeatIndices())).build();
+    }
+
+    /**
+     * Release a hold, so that its seats can be booked by anyone again.
+     * @param cookie The cookie that authenticates the user.
+     * @param id Identifier of the hold.
+     * @return An empty response.
+     */
+    @DELETE
+    @Path("/holds/{id}")
+    public Response releaseHold(@CookieParam("auth") Cookie cookie, @PathParam("id") String id) {
+        if (cookie == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        em.getTransaction().begin();
+
+        User user = Authenticator.instance().authenticate(em, cookie.getValue());
+
+        if (user == null) {
             em.getTransaction().rollback();
-            throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+            em.close();
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
+        // the user may be a reference, which can't be used once the
+        // EntityManager is closed.
+        long userId = user.getId();
+
+        em.getTransaction().commit();
+        em.close();
+
+        if (!SeatHoldManager.instance().release(findOwnHold(id, userId))) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+
+        return Response.noContent().build();
+    }
+
+    /**
+     * Helper method to find a hold that must belong to a given user.
+     * @param id Identifier of the hold.
+     * @param userId Identifier of the user.
+     * @return The hold.
+     */
+    private SeatHoldManager.SeatHold findOwnHold(String id, long userId) {
+        SeatHoldManager.SeatHold hold = SeatHoldManager.instance().get(id);
+
+        if (hold == null) {
+            // it may never have existed, or have expired or been confirmed.
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        if (hold.getUserId() != userId) {
+            throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
+
+        return hold;
     }
 
     /**
@@ -299,9 +863,9 @@ public class ConcertResource {
         Booking booking = bookingList.get(0);
 
         User user = booking.getUser();
-        Authentication authentication = em.find(Authentication.class, cookie.getValue());
+        User authenticatedUser = Authenticator.instance().authenticate(em, cookie.getValue());
 
-        if (!(user.getId() == authentication.getUser().getId())) {
+        if (authenticatedUser == null || user.getId() != authenticatedUser.getId()) {
             em.getTransaction().rollback();
             em.close();
             throw new WebApplicationException(Response.Status.FORBIDDEN);
@@ -314,46 +878,65 @@ public class ConcertResource {
     }
 
     /**
-     * Get all the bookings that a user has made.
+     * Get all the bookings that a user has made, a page at a time.
      * @param cookie Authentication for user.
-     * @return A list of bookings that the user has made.
+     * @param cursor The ID of the last booking in the previous page, or 0 for
+     *               the first page.
+     * @param limit The most bookings to return.
+     * @param uriInfo The request URI, to link to the next page.
+     * @return A list of the user's bookings after the cursor, with a Link
+     * header to the next page if there is one.
      */
     @GET
     @Path("/bookings")
-    public Response getAllBookingsForUser(@CookieParam("auth")Cookie cookie) {
+    public Response getAllBookingsForUser(@CookieParam("auth")Cookie cookie,
+                                          @QueryParam(Page.CURSOR_PARAM) @DefaultValue("0") long cursor,
+                                          @QueryParam(Page.LIMIT_PARAM) Integer limit,
+                                          @Context UriInfo uriInfo) {
         if (cookie == null) {
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
 
+        int size = Page.size(limit);
+
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
-        // Eager fetch as we need all the information to form the list
-        // of bookings that the user has
-        List<Authentication> authenticationList = em.createQuery("SELECT DISTINCT auth " +
-                "FROM Authentication auth " +
-                "LEFT OUTER JOIN FETCH auth.user user " +
-                "LEFT OUTER JOIN FETCH user.bookings bookings " +
-                "LEFT OUTER JOIN FETCH bookings.seats " +
-                "LEFT OUTER JOIN FETCH bookings.concert " +
-                "WHERE auth.authToken = :authToken", Authentication.class)
-                .setParameter("authToken", cookie.getValue())
-                .getResultList();
-
         // authenticate user
-        if (authenticationList == null || authenticationList.isEmpty()) {
+        User user = Authenticator.instance().authenticate(em, cookie.getValue());
+
+        if (user == null) {
             em.getTransaction().rollback();
             em.close();
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
 
+        // Find the IDs in the page first, as a limit can't be applied to a
+        // query that join fetches the seats.
+        Page<Long> idPage = Page.of(em.createQuery("SELECT booking.id " +
+                "FROM Booking booking " +
+                "WHERE booking.user = :user AND booking.id > :cursor " +
+                "ORDER BY booking.id", Long.class)
+                .setParameter("user", user)
+                .setParameter("cursor", cursor)
+                .setMaxResults(size + 1)
+                .getResultList(), size, Long::longValue);
+
+        // Eager fetch as we need all the information to form the list
+        // of bookings
+        List<Booking> bookings = idPage.getItems().isEmpty() ? new ArrayList<>() :
+                em.createQuery("SELECT DISTINCT booking " +
+                "FROM Booking booking " +
+                "LEFT OUTER JOIN FETCH booking.seats " +
+                "LEFT OUTER JOIN FETCH booking.concert " +
+                "WHERE booking.id IN :ids " +
+                "ORDER BY booking.id", Booking.class)
+                .setParameter("ids", idPage.getItems())
+                .getResultList();
+
         em.getTransaction().commit();
         em.close();
 
-        Authentication authentication = authenticationList.get(0);
-        User user = authentication.getUser();
-        Set<Booking> bookings = user.getBookings();
-
         // convert to DTO
         List<BookingDTO> bookingDTOS = new ArrayList<>();
 
@@ -361,7 +944,13 @@ public class ConcertResource {
             bookingDTOS.add(BookingMapper.toDto(booking));
         }
 
-        return Response.ok(bookingDTOS).build();
+        Response.ResponseBuilder builder = Response.ok(bookingDTOS);
+
+        if (idPage.getNextCursor() != null) {
+            builder.link(idPage.nextUri(uriInfo), "next");
+        }
+
+        return builder.build();
     }
 
     /**
@@ -373,14 +962,19 @@ public class ConcertResource {
     @GET
     @Path("/seats/{date}")
     public Response getSeats(@PathParam("date")String dateStr, @QueryParam("status")String status) {
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-
         LocalDateTime date = LocalDateTime.parse(dateStr);
 
-        List<SeatDTO> seatDTOList = new ArrayList<>();
-        List<Seat> seats;
+        // make sure the date's seats exist. There are no seats to list if no
+        // concert is on the date.
+        if (SeatAvailabilityManager.instance().forDate(date) == null) {
+            return Response.ok(new ArrayList<SeatDTO>()).build();
+        }
 
-        em.getTransaction().begin();
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+
+        String query = "SELECT new " + SeatDTO.class.getName() + "(seat.label, seat.price) " +
+                "FROM Seat seat " +
+                "WHERE seat.date = :date";
 
         // Gets a list of seats depending on the status criteria.
         // We could get a list of all seats and check our status criteria
@@ -388,31 +982,25 @@ public class ConcertResource {
         // database as we then don't need to send the extra information to
         // our application.
         if (status.equals("Booked")) {
-            seats = em.createQuery("SELECT seat " +
-                    "FROM Seat seat " +
-                    "WHERE seat.date = :date " +
-                    "AND seat.isBooked = true", Seat.class)
-                    .setParameter("date", date).getResultList();
+            query += " AND seat.isBooked = true";
         } else if (status.equals("Unbooked")) {
-            seats = em.createQuery("SELECT seat " +
-                    "FROM Seat seat " +
-                    "WHERE seat.date = :date " +
-                    "AND seat.isBooked = false", Seat.class)
-                    .setParameter("date", date).getResultList();
-        } else {
-            seats = em.createQuery("SELECT seat " +
-                    "FROM Seat seat " +
-                    "WHERE seat.date = :date", Seat.class)
-                    .setParameter("date", date).getResultList();
+            query += " AND seat.isBooked = false";
         }
 
+        // This is a pure read, so nothing needs flushing at commit. The seats
+        // are selected straight into DTOs, so no entities are managed (or
+        // snapshotted for dirty checking) either.
+        em.unwrap(Session.class).setHibernateFlushMode(FlushMode.MANUAL);
+        em.getTransaction().begin();
+
+        List<SeatDTO> seatDTOList = em.createQuery(query, SeatDTO.class)
+                .setParameter("date", date)
+                .setHint(QueryHints.READ_ONLY, true)
+                .getResultList();
+
         em.getTransaction().commit();
         em.close();
 
-        for (Seat seat: seats) {
-            seatDTOList.add(SeatMapper.toDto(seat));
-        }
-
         return Response.ok(seatDTOList).build();
     }
 
@@ -426,6 +1014,7 @@ public class ConcertResource {
      */
     @POST
     @Path("/subscribe/concertInfo")
+    @RateLimited(RateLimit.SUBSCRIPTIONS)
     public void subscribeToConcert(@CookieParam("auth") Cookie cookie, @Suspended AsyncResponse subscriber,
                                    ConcertInfoSubscriptionDTO concertInfoSubscriptionDTO) {
         if (cookie == null) {
@@ -436,9 +1025,9 @@ public class ConcertResource {
         em.getTransaction().begin();
 
         // authenticate user
-        Authentication authentication = em.find(Authentication.class, cookie.getValue());
+        User user = Authenticator.instance().authenticate(em, cookie.getValue());
 
-        if (authentication == null) {
+        if (user == null) {
             em.getTransaction().rollback();
             em.close();
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
@@ -448,109 +1037,108 @@ public class ConcertResource {
         Concert concert = findConcertOnDate(em, concertInfoSubscriptionDTO.getConcertId(),
                 concertInfoSubscriptionDTO.getDate());
 
-        Subscription subscription = new Subscription(concert, subscriber, concertInfoSubscriptionDTO);
-
-        synchronized (subscriptions){
-            subscriptions.add(subscription);
-        }
-
-        // make sure that if the subscription already meets its criteria,
-        // the client is notified immediately.
-        updateConcertSubscription(em, concert, subscription);
-
         em.getTransaction().commit();
         em.close();
-    }
 
-    /**
-     * Updates a single subscription if it has met its criteria.
-     * @param em Entity manager to query using.
-     * @param concert Concert of subscription.
-     * @param subscription Subscription information.
-     * @return Whether an update has happened.
-     */
-    private boolean updateConcertSubscription(EntityManager em, Concert concert, Subscription subscription) {
-        if (subscription.getConcert().getId() == concert.getId()) {
-            // get all the seats because we need to process them anyway
-            // to get the count of all seats, and the number of seats in
-            // a concert is limited.
-            List<Seat> allSeats = em.createQuery("SELECT seat FROM Seat seat " +
-                    "WHERE seat.date = :concertDate", Seat.class)
-                    .setParameter("concertDate", subscription.getSubscriptionInfo().getDate())
-                    .getResultList();
-
-            // calculate booked percentage
-            int bookedSeats = 0;
-            for (Seat seat: allSeats) {
-                if (seat.isBooked()) {
-                    bookedSeats++;
-                }
-            }
+        SubscriptionRegistry.Subscription subscription =
+                SubscriptionRegistry.instance().add(subscriber, concertInfoSubscriptionDTO);
 
-            if ((bookedSeats*100/allSeats.size()) >= subscription.getSubscriptionInfo().getPercentageBooked()) {
-                ConcertInfoNotificationDTO notificationDTO = new ConcertInfoNotificationDTO(allSeats.size() - bookedSeats);
-                subscription.getSubscriber().resume(notificationDTO);
-                return true;
-            }
-        }
+        // once the response has completed for any reason, stop tracking it.
+        subscriber.register((CompletionCallback) throwable -> SubscriptionRegistry.instance().remove(subscription));
 
-        return false;
+        // make sure that if the subscription already meets its criteria,
+        // the client is notified immediately.
+        updateConcertSubscriptions(concert.getId(), concertInfoSubscriptionDTO.getDate());
     }
 
     /**
-     * Updates all subscribers of this resource if their criteria has been met.
-     * @param concert The concert that has changed.
+     * Streams the availability of seats for a concert date to the client as
+     * Server-Sent Events. Unlike a subscription, the stream stays open, so the
+     * client only has to connect and be authenticated once.
+     * @param cookie The authentication token of the user. A user must be
+     *               logged in to watch a concert date.
+     * @param concertId The concert to watch.
+     * @param dateParam The date of the concert to watch.
+     * @param eventSink The client's event stream.
+     * @param sse Used to create events for the stream.
      */
-    private void updateConcertSubscriptions(Concert concert) {
+    @GET
+    @Path("/concerts/{id}/dates/{date}/availability/stream")
+    @RateLimited(RateLimit.SUBSCRIPTIONS)
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamAvailability(@CookieParam("auth") Cookie cookie, @PathParam("id") long concertId,
+                                   @PathParam("date") LocalDateTimeParam dateParam,
+                                   @Context SseEventSink eventSink, @Context Sse sse) {
+        if (cookie == null) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+
         EntityManager em = PersistenceManager.instance().createEntityManager();
         em.getTransaction().begin();
 
-        List<Subscription> toRemove = new ArrayList<>();
-
-        synchronized (subscriptions) {
-            for (Subscription subscription: subscriptions) {
-                if (updateConcertSubscription(em, concert, subscription)) {
-                        toRemove.add(subscription);
-                }
-            }
+        // authenticate user
+        User user = Authenticator.instance().authenticate(em, cookie.getValue());
 
-            // a subscription should only last for one notification.
-            subscriptions.removeAll(toRemove);
+        if (user == null) {
+            em.getTransaction().rollback();
+            em.close();
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
 
+        LocalDateTime date = dateParam.getLocalDateTime();
+        findConcertOnDate(em, concertId, date);
+
         em.getTransaction().commit();
         em.close();
+
+        SeatAvailability availability = SeatAvailabilityManager.instance().forDate(date);
+
+        if (availability == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        AvailabilityBroadcaster.instance().register(sse, eventSink, concertId, date, availability);
     }
 
     /**
-     * Helper class to store subscription information.
+     * Builds the catalogue cache key for a page of a list.
+     * @param list The path of the list.
+     * @param cursor The cursor the page starts after.
+     * @param size The page size.
+     * @return The key for the page.
      */
-    private static class Subscription {
-        private final Concert concert;
-        private final AsyncResponse subscriber;
-        private final ConcertInfoSubscriptionDTO subscriptionInfo;
+    private String pageKey(String list, long cursor, int size) {
+        return list + "?" + Page.CURSOR_PARAM + "=" + cursor + "&" + Page.LIMIT_PARAM + "=" + size;
+    }
 
-        private Subscription(Concert concert, AsyncResponse subscriber, ConcertInfoSubscriptionDTO subscriptionInfo) {
-            this.concert = concert;
-            this.subscriber = subscriber;
-            this.subscriptionInfo = subscriptionInfo;
-        }
+    /**
+     * Notifies all subscribers of a concert date whose criteria has been met.
+     * Only the subscriptions for that date with a low enough threshold are
+     * visited, and each of them is notified once.
+     * @param concertId The concert that has changed.
+     * @param date The date that has changed.
+     */
+    private void updateConcertSubscriptions(long concertId, LocalDateTime date) {
+        // the booked and total seat counts are kept up to date in memory,
+        // so checking the thresholds doesn't need to touch the database.
+        SeatAvailability availability = SeatAvailabilityManager.instance().forDate(date);
 
-        public Concert getConcert() {
-            return concert;
+        if (availability == null) {
+            return;
         }
 
-        public AsyncResponse getSubscriber() {
-            return subscriber;
-        }
+        int percentageBooked = availability.getPercentageBooked();
+        int seatsRemaining = availability.getTotalSeats() - availability.getBookedSeats();
 
-        public ConcertInfoSubscriptionDTO getSubscriptionInfo() {
-            return subscriptionInfo;
+        for (SubscriptionRegistry.Subscription subscription:
+                SubscriptionRegistry.instance().takeReached(concertId, date, percentageBooked)) {
+            subscription.getSubscriber().resume(new ConcertInfoNotificationDTO(seatsRemaining));
         }
     }
 
     /**
-     * Helper class to make a booking.
+     * Helper class to make a booking. The booking's seats are claimed with
+     * the configured {@link SeatClaimStrategy}.
      * @param bookingRequestDTO Information about the booking to make.
      * @param em Entity Manager to query our database with.
      * @param concert The concert to book.
@@ -561,42 +1149,35 @@ public class ConcertResource {
                                 EntityManager em, Concert concert,
                                 User user) {
 
-        LocalDateTime date = bookingRequestDTO.getDate();
-        Set<Seat> seatsToBook = new HashSet<>();
+        Set<Seat> seatsToBook = seatClaimStrategy.claim(em, bookingRequestDTO.getDate(),
+                bookingRequestDTO.getSeatLabels());
 
-        List<Seat> foundSeatList = em.createQuery("SELECT seat " +
-                "FROM Seat seat " +
-                "WHERE seat.label in :seatLabels " +
-                "AND seat.date = :date", Seat.class)
-                .setParameter("seatLabels", bookingRequestDTO.getSeatLabels())
-                .setParameter("date", date)
-                // Make sure that the seat does not become booked while we are
-                // attempting to book it to prevent seats from being concurrently
-                // booked.
-                .setLockMode(LockModeType.OPTIMISTIC)
-                .getResultList();
+        return new Booking(concert, user, bookingRequestDTO.getDate(), seatsToBook);
+    }
 
-        if (foundSeatList == null ||
-                foundSeatList.size() != bookingRequestDTO.getSeatLabels().size()) {
-            em.getTransaction().rollback();
-            em.close();
-            throw new WebApplicationException(Response.Status.BAD_REQUEST);
-        }
+    /**
+     * Helper method to convert the requested seat labels into their positions
+     * in the theatre.
+     * @param em Entity Manager to close if the labels are invalid.
+     * @param seatLabels Labels of the requested seats.
+     * @return Positions of the requested seats.
+     */
+    private int[] toSeatIndices(EntityManager em, List<String> seatLabels) {
+        int[] seatIndices = new int[seatLabels.size()];
+        Set<Integer> seen = new HashSet<>();
 
-        for (Seat seat: foundSeatList) {
-            if (seat.isBooked()) {
+        for (int i = 0; i < seatIndices.length; i++) {
+            seatIndices[i] = TheatreLayout.indexOf(seatLabels.get(i));
+
+            // unknown or repeated seats can never be booked
+            if (seatIndices[i] < 0 || !seen.add(seatIndices[i])) {
                 em.getTransaction().rollback();
                 em.close();
-                throw new WebApplicationException(Response.Status.FORBIDDEN);
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
             }
-
-            seatsToBook.add(seat);
-            // update the flag in the seat so that it can't be booked later on.
-            seat.setBooked(true);
         }
 
-        return new Booking(concert, user, bookingRequestDTO.getDate(), seatsToBook);
-
+        return seatIndices;
     }
 
     /**
@@ -0,0 +1,178 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.service.util.ExpiringCache;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Singleton class that makes requests idempotent: a client that sends an Idempotency-Key header with a request, and
+ * then sends the request again with the same key (e.g. because the first one timed out), gets the first request's
+ * outcome again instead of the request being carried out twice.
+ * <p>
+ * The outcome of each keyed request (its status code and Location) is kept in a bounded, expiring store. Keys are
+ * scoped to the user, who must be authenticated before their key is recorded, so one user can't see another's
+ * outcomes and clients that aren't logged in can't fill the store. Only final outcomes are kept: if a request fails
+ * in a way that might not happen again (a server error, a conflict that the client is told to retry, or a token that
+ * has just expired), its key is forgotten, and a retry carries out the request again. While a keyed request is in
+ * progress, a retry with the same key gets 409 (Conflict), and reusing a key for a different request gets 422
+ * (Unprocessable Entity). It is configured with the following system properties:
+ * <ul>
+ *     <li>concert.idempotency.maxEntries - the most outcomes to keep; the least recently used are evicted first
+ *     (default 10000)</li>
+ *     <li>concert.idempotency.ttlSeconds - how long outcomes are kept for (default 3600)</li>
+ * </ul>
+ */
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    private static IdempotencyStore _instance = null;
+
+    private final ExpiringCache<String, Outcome> outcomes = new ExpiringCache<>(
+            Integer.getInteger("concert.idempotency.maxEntries", 10000),
+            Long.getLong("concert.idempotency.ttlSeconds", 60 * 60) * 1000);
+
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong inProgressConflicts = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    protected IdempotencyStore() {
+    }
+
+    public static synchronized IdempotencyStore instance() {
+        if (_instance == null) {
+            _instance = new IdempotencyStore();
+        }
+        return _instance;
+    }
+
+    /**
+     * Carries out a request, unless a request with the same key has been carried out before, in which case its
+     * outcome is returned (or thrown) again.
+     * @param scope What the key is scoped to, e.g. the authenticated user.
+     * @param key The client's idempotency key, or null to carry out the request without one.
+     * @param fingerprint What the request asks for, to check that a key isn't reused for a different request. It
+     *                    must implement equals().
+     * @param request Carries out the request.
+     * @return The response to the request, or to the first request with the same key.
+     * @throws WebApplicationException the exception that the request threw, or an exception with the status of the
+     * first request with the same key if that request failed.
+     */
+    public Response execute(String scope, String key, Object fingerprint, Supplier<Response> request) {
+        if (key == null) {
+            return request.get();
+        }
+
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        String storeKey = scope + " " + key;
+        Outcome outcome = new Outcome(fingerprint);
+        Outcome existing = outcomes.putIfAbsent(storeKey, outcome);
+
+        if (existing != null) {
+            return replay(existing, fingerprint);
+        }
+
+        try {
+            Response response = request.get();
+
+            if (isFinal(response.getStatus())) {
+                outcome.complete(response.getStatus(), response.getLocation());
+            } else {
+                outcomes.invalidate(storeKey);
+            }
+            return response;
+        } catch (WebApplicationException e) {
+            int status = e.getResponse().getStatus();
+
+            if (isFinal(status)) {
+                outcome.complete(status, null);
+            } else {
+                outcomes.invalidate(storeKey);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            outcomes.invalidate(storeKey);
+            throw e;
+        }
+    }
+
+    /**
+     * Forgets all outcomes, e.g. because the database has been reset and the bookings they refer to are gone.
+     */
+    public void clear() {
+        outcomes.clear();
+    }
+
+    /**
+     * @return How well the outcome store is working, and how many retries have been answered from it (replays),
+     * turned away because the first request was still in progress, or turned away because they didn't match.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("outcomes", outcomes.getMetrics());
+        metrics.put("replays", replays.get());
+        metrics.put("inProgressConflicts", inProgressConflicts.get());
+        metrics.put("mismatches", mismatches.get());
+        return metrics;
+    }
+
+    private Response replay(Outcome outcome, Object fingerprint) {
+        if (!outcome.fingerprint.equals(fingerprint)) {
+            mismatches.incrementAndGet();
+            throw new WebApplicationException(UNPROCESSABLE_ENTITY);
+        }
+
+        int status = outcome.status;
+        if (status == 0) {
+            inProgressConflicts.incrementAndGet();
+            throw new WebApplicationException(Response.Status.CONFLICT);
+        }
+
+        replays.incrementAndGet();
+        if (status >= 400) {
+            throw new WebApplicationException(Response.status(status).header(REPLAYED_HEADER, true).build());
+        }
+        return Response.status(status).location(outcome.location).header(REPLAYED_HEADER, true).build();
+    }
+
+    /**
+     * @return Whether a request that finished with the given status would finish the same way if it were carried out
+     * again.
+     */
+    private static boolean isFinal(int status) {
+        return status < 500 &&
+                status != Response.Status.UNAUTHORIZED.getStatusCode() &&
+                status != Response.Status.CONFLICT.getStatusCode() &&
+                status != Response.Status.TOO_MANY_REQUESTS.getStatusCode();
+    }
+
+    private static class Outcome {
+        private final Object fingerprint;
+
+        // 0 while the request is in progress
+        private volatile int status;
+        private volatile URI location;
+
+        private Outcome(Object fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private void complete(int status, URI location) {
+            this.location = location;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package se325.assignment01.concert.service.services;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes runtime metrics for the concert service, so that its internal queues and caches can be monitored.
+ */
+@Path("/concert-service-metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class MetricsResource {
+
+    /**
+     * Get the current metrics, grouped by the component they describe.
+     * @return A map of component name to that component's metrics.
+     */
+    @GET
+    public Response getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("connectionPool", PersistenceManager.instance().getPoolMetrics());
+        metrics.put("entityCache", PersistenceManager.instance().getCacheMetrics());
+        metrics.put("authentication", Authenticator.instance().getMetrics());
+        metrics.put("seatAvailability", SeatAvailabilityManager.instance().getMetrics());
+        metrics.put("rateLimits", RateLimiter.instance().getMetrics());
+        metrics.put("admission", AdmissionController.instance().getMetrics());
+        metrics.put("idempotency", IdempotencyStore.instance().getMetrics());
+        metrics.put("seatHolds", SeatHoldManager.instance().getMetrics());
+        metrics.put("transactionRetries", TransactionRetrier.instance().getMetrics());
+        metrics.put("catalogueCache", CatalogueCache.instance().getMetrics());
+        metrics.put("notifications", NotificationDispatcher.instance().getMetrics());
+        metrics.put("availabilityStreams", AvailabilityBroadcaster.instance().getMetrics());
+
+        return Response.ok(metrics).build();
+    }
+}
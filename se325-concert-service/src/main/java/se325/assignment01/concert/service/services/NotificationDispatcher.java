@@ -0,0 +1,123 @@
+package se325.assignment01.concert.service.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that sends subscriber notifications on its own thread, so that a booking request doesn't wait
+ * for every subscriber to be resumed before it can respond.
+ * <p>
+ * Notifications are coalesced per concert date: the first booking for a date opens a coalescing window, and the
+ * subscribers for that date are checked once when it closes, a fixed time after that first booking. Bookings for the
+ * date made while the window is open don't extend it; they are covered by the same check, which reads the date's
+ * latest state. A booking made after the check has started opens a new window. There is at most one pending
+ * notification per date, and no more than a fixed number of dates can be pending at once. If that limit
+ * is reached the notification is sent on the caller's thread instead, which slows bookings down rather than letting
+ * the backlog grow without bound.
+ * <p>
+ * The coalescing window and limit can be set with the concert.notifications.coalesceMillis and
+ * concert.notifications.maxPending system properties.
+ */
+public class NotificationDispatcher {
+    private static Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private static NotificationDispatcher _instance = null;
+
+    private final long coalesceMillis = Long.getLong("concert.notifications.coalesceMillis", 20);
+    private final int maxPending = Integer.getInteger("concert.notifications.maxPending", 1000);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "concert-notifications");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // dates with a notification waiting to be sent, and when the first booking for it was made.
+    private final ConcurrentMap<LocalDateTime, Long> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong sentByCaller = new AtomicLong();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    protected NotificationDispatcher() {
+    }
+
+    public static synchronized NotificationDispatcher instance() {
+        if (_instance == null) {
+            _instance = new NotificationDispatcher();
+        }
+        return _instance;
+    }
+
+    /**
+     * Requests that the subscribers for a concert date are notified. If no notification for the date is pending, one
+     * is scheduled for the end of the coalescing window, which starts now; otherwise the pending one covers this
+     * request too.
+     * @param date The date that has changed.
+     * @param notification Notifies the subscribers for the date. This reads the latest state of the date when it
+     *                     runs, so running it once for several changes is enough.
+     */
+    public void dispatch(LocalDateTime date, Runnable notification) {
+        requested.incrementAndGet();
+        long now = System.nanoTime();
+
+        if (pending.containsKey(date)) {
+            // a notification for this date hasn't been sent yet, so it will include this change too.
+            return;
+        }
+
+        if (pending.size() >= maxPending) {
+            sentByCaller.incrementAndGet();
+            notification.run();
+            return;
+        }
+
+        if (pending.putIfAbsent(date, now) == null) {
+            executor.schedule(() -> send(date, notification), coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(LocalDateTime date, Runnable notification) {
+        // remove the date before notifying, so that a booking made while we are notifying gets its own
+        // notification rather than being missed.
+        Long requestedAt = pending.remove(date);
+        if (requestedAt != null) {
+            long lag = System.nanoTime() - requestedAt;
+            lastLagNanos.set(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+        }
+
+        try {
+            notification.run();
+            dispatched.incrementAndGet();
+        } catch (RuntimeException e) {
+            LOGGER.warn("send(): Failed to notify subscribers for " + date, e);
+        }
+    }
+
+    /**
+     * @return Counters describing the dispatcher's queue and how far behind it is running.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", pending.size());
+        metrics.put("requested", requested.get());
+        metrics.put("dispatched", dispatched.get());
+        metrics.put("sentByCaller", sentByCaller.get());
+        metrics.put("lastDispatchLagMillis", TimeUnit.NANOSECONDS.toMillis(lastLagNanos.get()));
+        metrics.put("maxDispatchLagMillis", TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get()));
+        return metrics;
+    }
+}
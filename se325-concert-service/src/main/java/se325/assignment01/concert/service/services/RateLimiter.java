@@ -0,0 +1,209 @@
+package se325.assignment01.concert.service.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that limits how often each client can make requests, using a token bucket for each client and
+ * limit. Each bucket holds up to a burst of tokens, and is refilled at a steady rate; each request takes a token, and
+ * requests that find the bucket empty are turned away.
+ * <p>
+ * Buckets are lock-free. Rather than a token count and the time it was last refilled, each bucket only keeps the time
+ * at which it will be full again (the "theoretical arrival time" of the generic cell rate algorithm), which is
+ * updated with a single compare-and-set. A full bucket is no different from a missing one, so buckets that have been
+ * idle long enough to fill up are evicted every so often, keeping memory bounded by the number of clients that were
+ * active recently. If there are too many active clients to keep a bucket for each, new clients share a single
+ * overflow bucket for each limit until buckets are evicted, so a flood of new clients is limited as one client
+ * rather than not at all. It is configured with the following system properties:
+ * <ul>
+ *     <li>concert.ratelimit.&lt;name&gt;.perSecond and concert.ratelimit.&lt;name&gt;.burst - override the rates
+ *     of the limit with that name</li>
+ *     <li>concert.ratelimit.maxBuckets - the most buckets to keep; once there are this many, new clients use the
+ *     overflow bucket (default 100000)</li>
+ *     <li>concert.ratelimit.sweepSeconds - how often idle buckets are evicted (default 60)</li>
+ * </ul>
+ */
+public class RateLimiter {
+
+    private static RateLimiter _instance = null;
+
+    private final int maxBuckets = Integer.getInteger("concert.ratelimit.maxBuckets", 100000);
+    private final long sweepIntervalNanos =
+            TimeUnit.SECONDS.toNanos(Long.getLong("concert.ratelimit.sweepSeconds", 60));
+
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<BucketKey, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong limited = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    protected RateLimiter() {
+    }
+
+    public static synchronized RateLimiter instance() {
+        if (_instance == null) {
+            _instance = new RateLimiter();
+        }
+        return _instance;
+    }
+
+    /**
+     * Takes a token from a client's bucket.
+     * @param limitName The name of the limit that the request counts towards.
+     * @param defaultPerSecond The limit's rate, unless it is overridden by a system property.
+     * @param defaultBurst The limit's burst, unless it is overridden by a system property.
+     * @param client Identifies the client, e.g. by its authentication token.
+     * @return 0 if the request is allowed, or else how many nanoseconds the client must wait before a token will be
+     * available.
+     */
+    public long tryAcquire(String limitName, double defaultPerSecond, int defaultBurst, String client) {
+        Limit limit = limits.computeIfAbsent(limitName, name -> new Limit(name, defaultPerSecond, defaultBurst));
+        long now = System.nanoTime();
+
+        sweepIfDue(now);
+        AtomicLong bucket = bucketFor(limit, new BucketKey(limitName, client));
+
+        while (true) {
+            long fullAt = bucket.get();
+            // taking a token pushes back the time at which the bucket will be full again
+            long newFullAt = Math.max(fullAt, now) + limit.intervalNanos;
+            long wait = newFullAt - now - limit.capacityNanos;
+
+            if (wait > 0) {
+                limited.incrementAndGet();
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, newFullAt)) {
+                allowed.incrementAndGet();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Forgets every client's requests, e.g. because the database has been reset and the users that buckets are kept
+     * for may have been reloaded.
+     */
+    public void clear() {
+        buckets.clear();
+    }
+
+    /**
+     * @return How many requests have been allowed and turned away, how many were counted in an overflow bucket, and
+     * how many buckets are kept.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("buckets", buckets.size());
+        metrics.put("maxBuckets", maxBuckets);
+        metrics.put("allowed", allowed.get());
+        metrics.put("limited", limited.get());
+        metrics.put("overflowed", overflowed.get());
+        metrics.put("evictions", evictions.get());
+
+        Map<String, Object> limitRates = new LinkedHashMap<>();
+        for (Limit limit : limits.values()) {
+            Map<String, Object> rates = new LinkedHashMap<>();
+            rates.put("perSecond", limit.perSecond);
+            rates.put("burst", limit.burst);
+            limitRates.put(limit.name, rates);
+        }
+        metrics.put("limits", limitRates);
+
+        return metrics;
+    }
+
+    /**
+     * @return The client's bucket, or the limit's overflow bucket if there is no room for a new one.
+     */
+    private AtomicLong bucketFor(Limit limit, BucketKey key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+
+        // idle buckets are only evicted by the regular sweep, so that a flood of new clients can't make every
+        // request scan all the buckets.
+        if (buckets.size() >= maxBuckets) {
+            overflowed.incrementAndGet();
+            return limit.overflow;
+        }
+
+        // a new bucket is full, i.e. it was full at any time up to now
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+    }
+
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        // only one request carries out each sweep
+        if (now - last >= sweepIntervalNanos && lastSweep.compareAndSet(last, now)) {
+            sweep(now);
+        }
+    }
+
+    /**
+     * Evicts the buckets that are full. A request that took a token from a bucket just as it was evicted isn't
+     * counted, which at most lets a client make one extra request.
+     */
+    private void sweep(long now) {
+        for (Iterator<AtomicLong> iterator = buckets.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().get() >= 0) {
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static class Limit {
+        private final String name;
+        private final double perSecond;
+        private final int burst;
+
+        // the time it takes to refill one token, and to refill the whole bucket
+        private final long intervalNanos;
+        private final long capacityNanos;
+
+        // shared by the clients that there is no room to keep a bucket for
+        private final AtomicLong overflow = new AtomicLong(System.nanoTime());
+
+        private Limit(String name, double defaultPerSecond, int defaultBurst) {
+            this.name = name;
+            this.perSecond = Double.parseDouble(System.getProperty(
+                    "concert.ratelimit." + name + ".perSecond", Double.toString(defaultPerSecond)));
+            this.burst = Math.max(1, Integer.getInteger("concert.ratelimit." + name + ".burst", defaultBurst));
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            this.capacityNanos = intervalNanos * burst;
+        }
+    }
+
+    private static class BucketKey {
+        private final String limitName;
+        private final String client;
+
+        private BucketKey(String limitName, String client) {
+            this.limitName = limitName;
+            this.client = client;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BucketKey)) return false;
+            BucketKey other = (BucketKey) o;
+            return limitName.equals(other.limitName) && client.equals(other.client);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * limitName.hashCode() + client.hashCode();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package se325.assignment01.concert.service.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se325.assignment01.concert.service.util.ConcertUtils;
+import se325.assignment01.concert.service.util.SeatAvailability;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that keeps an in-memory {@link SeatAvailability} for every concert date that has seats. Bookings
+ * claim their seats here before touching the database, so that requests for seats which are already taken are
+ * rejected straight away.
+ * <p>
+ * Seats are identified by their date alone (a Seat is not linked to a Concert), so the availability is kept per
+ * date. Dates are unique across concerts.
+ * <p>
+ * Seats are not created up front. The first time a concert date is accessed (by a seat listing, booking,
+ * subscription or availability stream), its seats are loaded from the SEAT table, or created there if they don't
+ * exist yet. Each date is materialized once: concurrent first accesses wait for the same materialization, and if
+ * another server inserts the seats first, the unique index on SEAT(DATE, LABEL) rejects the duplicates and the
+ * existing seats are loaded instead. The database work is done outside the map's locks, so materializing one date
+ * never holds up accesses to other dates.
+ * <p>
+ * The concert dates themselves are loaded once (and again after a reset), so a date without a concert is rejected
+ * from memory rather than with a query each time it is asked for.
+ */
+public class SeatAvailabilityManager {
+    private static Logger LOGGER = LoggerFactory.getLogger(SeatAvailabilityManager.class);
+
+    private static SeatAvailabilityManager _instance = null;
+
+    // each date's availability, completed once its seats have been materialized.
+    private final ConcurrentMap<LocalDateTime, CompletableFuture<SeatAvailability>> availabilities =
+            new ConcurrentHashMap<>();
+
+    // every date that has a concert, or null if they haven't been loaded since the last reset.
+    private volatile Set<LocalDateTime> concertDates = null;
+
+    private final AtomicLong unknownDates = new AtomicLong();
+
+    protected SeatAvailabilityManager() {
+    }
+
+    public static synchronized SeatAvailabilityManager instance() {
+        if (_instance == null) {
+            _instance = new SeatAvailabilityManager();
+        }
+        return _instance;
+    }
+
+    /**
+     * Gets the availability of seats on a date, creating the date's seats first if this is the first time it has
+     * been accessed.
+     * @param date The concert date.
+     * @return The availability of seats on the given date, or null if no concert is on that date.
+     */
+    public SeatAvailability forDate(LocalDateTime date) {
+        if (!concertDates().contains(date)) {
+            unknownDates.incrementAndGet();
+            return null;
+        }
+
+        CompletableFuture<SeatAvailability> availability = availabilities.get(date);
+
+        if (availability == null) {
+            CompletableFuture<SeatAvailability> materializing = new CompletableFuture<>();
+            availability = availabilities.putIfAbsent(date, materializing);
+
+            if (availability == null) {
+                // we are the first to access this date, so materialize it; anyone else accessing it waits for us.
+                try {
+                    materializing.complete(materialize(date));
+                } catch (RuntimeException e) {
+                    // let the next access try again.
+                    availabilities.remove(date, materializing);
+                    materializing.completeExceptionally(e);
+                    throw e;
+                }
+                return materializing.join();
+            }
+        }
+
+        try {
+            return availability.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Discards all availability information, e.g. because the database has been reset. Seats will be materialized
+     * again as their dates are accessed.
+     */
+    public void clear() {
+        concertDates = null;
+        availabilities.clear();
+    }
+
+    /**
+     * @return The number of concert dates whose seats have been materialized, and how many accesses were for dates
+     * without a concert.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("materializedDates", availabilities.size());
+        metrics.put("unknownDates", unknownDates.get());
+        return metrics;
+    }
+
+    /**
+     * @return Every date that has a concert, loading them from the database if they haven't been loaded since the
+     * last reset.
+     */
+    private Set<LocalDateTime> concertDates() {
+        Set<LocalDateTime> dates = concertDates;
+
+        if (dates == null) {
+            EntityManager em = PersistenceManager.instance().createEntityManager();
+            try {
+                em.getTransaction().begin();
+
+                dates = new HashSet<>(em.createQuery("SELECT DISTINCT concertDate " +
+                        "FROM Concert concert JOIN concert.dates concertDate", LocalDateTime.class)
+                        .getResultList());
+
+                em.getTransaction().commit();
+            } finally {
+                em.close();
+            }
+
+            // concurrent first accesses may each load the dates, but they all load the same ones.
+            concertDates = Collections.unmodifiableSet(dates);
+        }
+        return dates;
+    }
+
+    /**
+     * Loads the seats for a concert date from the SEAT table, creating them if there aren't any yet.
+     * @return The availability of the seats.
+     */
+    private SeatAvailability materialize(LocalDateTime date) {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            SeatAvailability availability = load(em, date);
+
+            if (availability == null) {
+                try {
+                    ConcertUtils.createSeats(em, Collections.singleton(date));
+
+                    // every seat in the theatre has just been created unbooked.
+                    availability = new SeatAvailability();
+                    for (int seat = 0; seat < TheatreLayout.NUM_SEATS_IN_THEATRE; seat++) {
+                        availability.loadSeat(seat, false);
+                    }
+
+                    LOGGER.debug("materialize(): Created seats for " + date);
+                } catch (PersistenceException e) {
+                    // the seats were created by someone else in the meantime.
+                    if (em.getTransaction().isActive()) {
+                        em.getTransaction().rollback();
+                    }
+                    em.clear();
+                    availability = load(em, date);
+
+                    if (availability == null) {
+                        throw e;
+                    }
+                }
+            }
+
+            return availability;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * @return The availability of the seats for a date in the SEAT table, or null if the date has no seats.
+     */
+    private SeatAvailability load(EntityManager em, LocalDateTime date) {
+        em.getTransaction().begin();
+
+        // only the label and booked flag are needed, so don't load whole Seat entities.
+        List<Object[]> seats = em.createQuery("SELECT seat.label, seat.isBooked " +
+                "FROM Seat seat " +
+                "WHERE seat.date = :date", Object[].class)
+                .setParameter("date", date)
+                .getResultList();
+
+        em.getTransaction().commit();
+
+        if (seats.isEmpty()) {
+            return null;
+        }
+
+        SeatAvailability availability = new SeatAvailability();
+        for (Object[] seat : seats) {
+            availability.loadSeat(TheatreLayout.indexOf((String) seat[0]), (Boolean) seat[1]);
+        }
+        return availability;
+    }
+}
@@ -0,0 +1,131 @@
+package se325.assignment01.concert.service.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se325.assignment01.concert.service.domain.Seat;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The ways a booking can mark its seats as booked in the database. Which one is used is set by the system property
+ * concert.booking.strategy ("optimistic" or "bulk_update"; optimistic is the default, and is also used if the
+ * property is set to anything else).
+ * <p>
+ * Either way, the seats are claimed in the caller's transaction, so they are only booked if it commits. If a seat is
+ * already booked, a WebApplicationException with status 403 (Forbidden) is thrown and the caller must roll back.
+ */
+public enum SeatClaimStrategy {
+
+    /**
+     * Loads the seats, checks that none of them are booked and marks each one as booked. The seats' versions are
+     * checked when the transaction commits, which fails if another transaction booked any of them in the meantime.
+     * Each seat is written with its own UPDATE.
+     */
+    OPTIMISTIC {
+        @Override
+        public Set<Seat> claim(EntityManager em, LocalDateTime date, List<String> seatLabels) {
+            List<Seat> foundSeatList = em.createQuery("SELECT seat " +
+                    "FROM Seat seat " +
+                    "WHERE seat.label in :seatLabels " +
+                    "AND seat.date = :date", Seat.class)
+                    .setParameter("seatLabels", seatLabels)
+                    .setParameter("date", date)
+                    // Make sure that the seat does not become booked while we are
+                    // attempting to book it to prevent seats from being concurrently
+                    // booked.
+                    .setLockMode(LockModeType.OPTIMISTIC)
+                    .getResultList();
+
+            if (foundSeatList.size() != seatLabels.size()) {
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+            }
+
+            Set<Seat> seatsToBook = new HashSet<>();
+
+            for (Seat seat: foundSeatList) {
+                if (seat.isBooked()) {
+                    throw new WebApplicationException(Response.Status.FORBIDDEN);
+                }
+
+                seatsToBook.add(seat);
+                // update the flag in the seat so that it can't be booked later on.
+                seat.setBooked(true);
+            }
+
+            return seatsToBook;
+        }
+    },
+
+    /**
+     * Marks all of the seats as booked with a single conditional UPDATE, which only changes seats that are not
+     * already booked. If it changes fewer rows than there are seats, some of them were already booked. The database
+     * locks the rows it updates until the transaction ends, so two bookings can't both claim the same seat, and
+     * nothing needs to be checked at commit time.
+     */
+    BULK_UPDATE {
+        @Override
+        public Set<Seat> claim(EntityManager em, LocalDateTime date, List<String> seatLabels) {
+            int claimed = em.createQuery("UPDATE Seat seat " +
+                    "SET seat.isBooked = true, seat.version = seat.version + 1 " +
+                    "WHERE seat.date = :date " +
+                    "AND seat.label IN :seatLabels " +
+                    "AND seat.isBooked = false")
+                    .setParameter("date", date)
+                    .setParameter("seatLabels", seatLabels)
+                    .executeUpdate();
+
+            if (claimed != seatLabels.size()) {
+                throw new WebApplicationException(Response.Status.FORBIDDEN);
+            }
+
+            // the booking only needs the seats' IDs, so don't load the seats themselves.
+            List<Long> seatIds = em.createQuery("SELECT seat.id " +
+                    "FROM Seat seat " +
+                    "WHERE seat.date = :date " +
+                    "AND seat.label IN :seatLabels", Long.class)
+                    .setParameter("date", date)
+                    .setParameter("seatLabels", seatLabels)
+                    .getResultList();
+
+            Set<Seat> seatsToBook = new HashSet<>();
+            for (Long seatId : seatIds) {
+                seatsToBook.add(em.getReference(Seat.class, seatId));
+            }
+
+            return seatsToBook;
+        }
+    };
+
+    private static Logger LOGGER = LoggerFactory.getLogger(SeatClaimStrategy.class);
+
+    /**
+     * Marks the seats with the given labels on the given date as booked, in the EntityManager's transaction.
+     * @param em The EntityManager, with an active transaction.
+     * @param date The date of the seats.
+     * @param seatLabels The labels of the seats. These must be valid and distinct.
+     * @return The seats that have been claimed, to add to the booking.
+     * @throws WebApplicationException with status 403 (Forbidden) if any of the seats are already booked.
+     */
+    public abstract Set<Seat> claim(EntityManager em, LocalDateTime date, List<String> seatLabels);
+
+    /**
+     * @return The strategy set by the concert.booking.strategy system property, or OPTIMISTIC if it isn't set to the
+     * name of a strategy.
+     */
+    public static SeatClaimStrategy configured() {
+        String strategy = System.getProperty("concert.booking.strategy", "optimistic");
+        try {
+            return valueOf(strategy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("configured(): Unknown booking strategy \"" + strategy + "\", using optimistic instead");
+            return OPTIMISTIC;
+        }
+    }
+}
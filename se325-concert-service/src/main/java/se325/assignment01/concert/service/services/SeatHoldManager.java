@@ -0,0 +1,243 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.common.dto.SeatHoldDTO;
+import se325.assignment01.concert.service.util.SeatAvailability;
+import se325.assignment01.concert.service.util.TheatreLayout;
+import se325.assignment01.concert.service.util.TimerWheel;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton class that keeps track of seat holds: seats that a user has picked and is about to book, which nobody
+ * else can take in the meantime. A hold's seats are claimed in the date's {@link SeatAvailability}, just like the
+ * seats of a booking in progress, so bookings and other holds for them are rejected straight away. When the hold is
+ * confirmed, the booking transaction runs for its seats without having to claim them again.
+ * <p>
+ * Holds only last for a while. Each hold is scheduled to expire on a {@link TimerWheel}, which gives its seats back
+ * if it hasn't been confirmed or released by then. Holds are kept in memory only, and are lost if the service
+ * restarts or the database is reset. They are configured with the following system properties:
+ * <ul>
+ *     <li>concert.hold.defaultSeconds - how long seats are held for if the request doesn't say (default 60)</li>
+ *     <li>concert.hold.maxSeconds - the longest that seats can be held for (default 300)</li>
+ *     <li>concert.hold.maxSeatsPerUser - the most seats that one user can hold at once, across all of their holds
+ *     (default a row's worth)</li>
+ *     <li>concert.hold.tickMillis - how often expired holds are checked for, which is also the most they can
+ *     outlive their expiry time by (default 100)</li>
+ * </ul>
+ */
+public class SeatHoldManager {
+
+    private static SeatHoldManager _instance = null;
+
+    private final int defaultSeconds = Integer.getInteger("concert.hold.defaultSeconds", 60);
+    private final int maxSeconds = Integer.getInteger("concert.hold.maxSeconds", 300);
+    private final int maxSeatsPerUser = Integer.getInteger("concert.hold.maxSeatsPerUser",
+            TheatreLayout.NUM_SEATS_PER_ROW);
+
+    private final ConcurrentMap<String, SeatHold> holds = new ConcurrentHashMap<>();
+
+    // the number of seats each user with an active hold is holding.
+    private final ConcurrentMap<Long, Integer> heldSeats = new ConcurrentHashMap<>();
+    private final TimerWheel expiryWheel;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    protected SeatHoldManager() {
+        long tickMillis = Long.getLong("concert.hold.tickMillis", 100);
+
+        // enough slots that a maximum-length hold only goes round the wheel once
+        int numSlots = (int) Math.max(1, maxSeconds * 1000L / tickMillis + 1);
+        expiryWheel = new TimerWheel("concert-hold-expiry", tickMillis, numSlots);
+    }
+
+    public static synchronized SeatHoldManager instance() {
+        if (_instance == null) {
+            _instance = new SeatHoldManager();
+        }
+        return _instance;
+    }
+
+    /**
+     * Holds seats for a user. The seats must already have been claimed in the date's availability by the caller;
+     * from now on, the hold owns the claim.
+     * @param userId The user to hold the seats for.
+     * @param concertId The concert that the seats are for.
+     * @param date The date that the seats are on.
+     * @param seatLabels The labels of the seats.
+     * @param seatIndices The positions of the seats, as claimed.
+     * @param availability The availability that the seats are claimed in.
+     * @param holdSeconds How long to hold the seats for, or 0 (or less) for the default.
+     * @return The new hold, or null if the user would be holding too many seats. In that case the seats are not
+     * held, and the caller still owns the claim.
+     */
+    public SeatHold hold(long userId, long concertId, LocalDateTime date, List<String> seatLabels, int[] seatIndices,
+                         SeatAvailability availability, int holdSeconds) {
+        if (heldSeats.merge(userId, seatIndices.length, Integer::sum) > maxSeatsPerUser) {
+            unhold(userId, seatIndices.length);
+            rejected.incrementAndGet();
+            return null;
+        }
+
+        int seconds = holdSeconds > 0 ? Math.min(holdSeconds, maxSeconds) : defaultSeconds;
+
+        SeatHold hold = new SeatHold(UUID.randomUUID().toString(), userId, concertId, date, seatLabels, seatIndices,
+                availability, LocalDateTime.now().plusSeconds(seconds));
+        // schedule the expiry before the hold can be found, so that it can always be cancelled
+        hold.expiry = expiryWheel.schedule(() -> {
+            if (holds.remove(hold.id, hold)) {
+                unhold(hold.userId, hold.seatIndices.length);
+                hold.availability.release(hold.seatIndices);
+                expired.incrementAndGet();
+            }
+        }, seconds * 1000L);
+
+        holds.put(hold.id, hold);
+        created.incrementAndGet();
+        return hold;
+    }
+
+    /**
+     * @param holdId The ID of a hold.
+     * @return The hold, or null if there is no such hold, e.g. because it has expired or been confirmed.
+     */
+    public SeatHold get(String holdId) {
+        return holds.get(holdId);
+    }
+
+    /**
+     * Takes a hold away so that its seats can be booked. Its seats stay claimed: the caller now owns the claim, and
+     * must release the seats if the booking fails.
+     * @param hold The hold to take.
+     * @return Whether the hold was taken, or false if it has just expired or been taken by someone else.
+     */
+    public boolean confirm(SeatHold hold) {
+        if (!holds.remove(hold.id, hold)) {
+            return false;
+        }
+
+        hold.expiry.cancel();
+        unhold(hold.userId, hold.seatIndices.length);
+        confirmed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Ends a hold early, giving its seats back.
+     * @param hold The hold to release.
+     * @return Whether the hold was released, or false if it has just expired or been confirmed.
+     */
+    public boolean release(SeatHold hold) {
+        if (!holds.remove(hold.id, hold)) {
+            return false;
+        }
+
+        hold.expiry.cancel();
+        unhold(hold.userId, hold.seatIndices.length);
+        hold.availability.release(hold.seatIndices);
+        released.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes seats off the number that a user is holding, forgetting the user once they hold none.
+     */
+    private void unhold(long userId, int numSeats) {
+        heldSeats.computeIfPresent(userId, (id, held) -> held == numSeats ? null : held - numSeats);
+    }
+
+    /**
+     * Forgets all holds, e.g. because the seat availability they are claimed in has been discarded.
+     */
+    public void clear() {
+        for (SeatHold hold : holds.values()) {
+            hold.expiry.cancel();
+        }
+        holds.clear();
+        heldSeats.clear();
+    }
+
+    /**
+     * @return The number of active holds, and how many holds have been created, confirmed, released and expired, and
+     * rejected because the user was holding too many seats.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("active", holds.size());
+        metrics.put("created", created.get());
+        metrics.put("confirmed", confirmed.get());
+        metrics.put("released", released.get());
+        metrics.put("expired", expired.get());
+        metrics.put("rejected", rejected.get());
+        return metrics;
+    }
+
+    /**
+     * Seats held for a user.
+     */
+    public static class SeatHold {
+        private final String id;
+        private final long userId;
+        private final long concertId;
+        private final LocalDateTime date;
+        private final List<String> seatLabels;
+        private final int[] seatIndices;
+        private final SeatAvailability availability;
+        private final LocalDateTime expiresAt;
+        private volatile TimerWheel.Timeout expiry;
+
+        private SeatHold(String id, long userId, long concertId, LocalDateTime date, List<String> seatLabels,
+                         int[] seatIndices, SeatAvailability availability, LocalDateTime expiresAt) {
+            this.id = id;
+            this.userId = userId;
+            this.concertId = concertId;
+            this.date = date;
+            this.seatLabels = seatLabels;
+            this.seatIndices = seatIndices;
+            this.availability = availability;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public long getConcertId() {
+            return concertId;
+        }
+
+        public LocalDateTime getDate() {
+            return date;
+        }
+
+        public List<String> getSeatLabels() {
+            return seatLabels;
+        }
+
+        public int[] getSeatIndices() {
+            return seatIndices;
+        }
+
+        public SeatAvailability getAvailability() {
+            return availability;
+        }
+
+        public SeatHoldDTO toDto() {
+            return new SeatHoldDTO(id, concertId, date, seatLabels, expiresAt);
+        }
+    }
+}
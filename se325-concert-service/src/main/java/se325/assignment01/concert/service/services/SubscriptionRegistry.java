@@ -0,0 +1,216 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.common.dto.ConcertInfoSubscriptionDTO;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton, concurrent registry of the clients waiting to be notified about a concert date. Subscriptions are grouped by
+ * concert and date, and each group is kept sorted by the percentage booked that the subscriber asked to be notified
+ * at. A change to one date therefore only looks at the subscriptions for that date whose threshold has been reached.
+ * <p>
+ * Taking and removing subscriptions are O(log n) operations on a skip list, which take no locks, and a subscription
+ * can only be taken once, so each subscriber is notified at most once. Adding a subscription, and dropping a group
+ * once its last subscription has gone, briefly lock the group's bin in the map, so that a subscription is never
+ * added to a group that has just been dropped.
+ */
+public class SubscriptionRegistry {
+
+    private static final Comparator<Subscription> BY_THRESHOLD = Comparator
+            .comparingInt(Subscription::getPercentageBooked)
+            .thenComparingLong(subscription -> subscription.sequence);
+
+    private static SubscriptionRegistry _instance = null;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // There is at most one group per concert date, and only while it has subscriptions.
+    private final ConcurrentMap<Key, NavigableSet<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    protected SubscriptionRegistry() {
+    }
+
+    public static synchronized SubscriptionRegistry instance() {
+        if (_instance == null) {
+            _instance = new SubscriptionRegistry();
+        }
+        return _instance;
+    }
+
+    /**
+     * Registers a subscriber.
+     * @param subscriber The response to resume when the subscription's threshold is reached.
+     * @param subscriptionInfo What the subscriber wants to be notified about.
+     * @return The new subscription.
+     */
+    public Subscription add(AsyncResponse subscriber, ConcertInfoSubscriptionDTO subscriptionInfo) {
+        Subscription subscription = new Subscription(subscriber, subscriptionInfo, nextSequence.getAndIncrement());
+
+        subscriptions.compute(new Key(subscriptionInfo.getConcertId(), subscriptionInfo.getDate()),
+                (key, group) -> {
+                    if (group == null) {
+                        group = new ConcurrentSkipListSet<>(BY_THRESHOLD);
+                    }
+                    group.add(subscription);
+                    return group;
+                });
+
+        return subscription;
+    }
+
+    /**
+     * Removes a subscription, if it hasn't already been taken.
+     * @param subscription The subscription to remove.
+     * @return Whether the subscription was removed by this call.
+     */
+    public boolean remove(Subscription subscription) {
+        Key key = new Key(subscription.getConcertId(), subscription.getDate());
+        NavigableSet<Subscription> group = subscriptions.get(key);
+
+        if (group == null || !group.remove(subscription)) {
+            return false;
+        }
+
+        removeIfEmpty(key);
+        return true;
+    }
+
+    /**
+     * Removes and returns every subscription for a concert date whose threshold has been reached. A subscription
+     * only lasts for one notification, so the caller becomes responsible for notifying the returned subscribers.
+     * @param concertId The concert that has changed.
+     * @param date The date that has changed.
+     * @param percentageBooked The percentage of seats now booked on that date.
+     * @return The subscriptions to notify, in order of threshold.
+     */
+    public List<Subscription> takeReached(long concertId, LocalDateTime date, int percentageBooked) {
+        List<Subscription> reached = new ArrayList<>();
+        Key key = new Key(concertId, date);
+        NavigableSet<Subscription> group = subscriptions.get(key);
+
+        if (group == null) {
+            return reached;
+        }
+
+        // the probe sorts after every subscription with a threshold of percentageBooked or less
+        Subscription probe = new Subscription(null,
+                new ConcertInfoSubscriptionDTO(concertId, date, percentageBooked), Long.MAX_VALUE);
+
+        for (Subscription subscription : group.headSet(probe, true)) {
+            // another thread may be taking the same subscriptions, only one of us gets each one.
+            if (group.remove(subscription)) {
+                reached.add(subscription);
+            }
+        }
+
+        if (!reached.isEmpty()) {
+            removeIfEmpty(key);
+        }
+        return reached;
+    }
+
+    /**
+     * Cancels every subscription, e.g. because the database has been reset and the bookings they were waiting on are
+     * gone. Their subscribers are sent 503 (Service Unavailable).
+     */
+    public void clear() {
+        for (Key key : subscriptions.keySet()) {
+            NavigableSet<Subscription> group = subscriptions.remove(key);
+            if (group == null) {
+                continue;
+            }
+
+            for (Subscription subscription : group) {
+                // as in takeReached(), only one thread gets each subscription.
+                if (group.remove(subscription)) {
+                    subscription.subscriber.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops a concert date's group if it has no subscriptions left.
+     */
+    private void removeIfEmpty(Key key) {
+        subscriptions.computeIfPresent(key, (k, group) -> group.isEmpty() ? null : group);
+    }
+
+    /**
+     * @return The number of subscriptions that are waiting to be notified.
+     */
+    public int size() {
+        int size = 0;
+        for (NavigableSet<Subscription> group : subscriptions.values()) {
+            size += group.size();
+        }
+        return size;
+    }
+
+    /**
+     * A client waiting to be notified when a concert date's booked percentage reaches a threshold.
+     */
+    public static class Subscription {
+        private final AsyncResponse subscriber;
+        private final ConcertInfoSubscriptionDTO subscriptionInfo;
+        private final long sequence;
+
+        private Subscription(AsyncResponse subscriber, ConcertInfoSubscriptionDTO subscriptionInfo, long sequence) {
+            this.subscriber = subscriber;
+            this.subscriptionInfo = subscriptionInfo;
+            this.sequence = sequence;
+        }
+
+        public AsyncResponse getSubscriber() {
+            return subscriber;
+        }
+
+        public long getConcertId() {
+            return subscriptionInfo.getConcertId();
+        }
+
+        public LocalDateTime getDate() {
+            return subscriptionInfo.getDate();
+        }
+
+        public int getPercentageBooked() {
+            return subscriptionInfo.getPercentageBooked();
+        }
+    }
+
+    /**
+     * Identifies a concert on a particular date.
+     */
+    private static class Key {
+        private final long concertId;
+        private final LocalDateTime date;
+
+        private Key(long concertId, LocalDateTime date) {
+            this.concertId = concertId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return concertId == key.concertId && date.equals(key.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(concertId, date);
+        }
+    }
+}
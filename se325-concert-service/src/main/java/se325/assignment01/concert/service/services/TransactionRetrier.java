@@ -0,0 +1,162 @@
+package se325.assignment01.concert.service.services;
+
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.StaleStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Singleton class that runs a unit of work in a transaction, and runs it again in a new transaction if it fails
+ * because another transaction changed a particular kind of entity first (e.g. the same user booking from two
+ * browser tabs at once). Other failures, including version conflicts on other entities, are not retried.
+ * <p>
+ * Before each retry it waits for a random time of up to baseDelay * 2^(retry - 1), capped at maxDelay, so that
+ * transactions that conflicted once don't just conflict again. It is configured with the following system
+ * properties:
+ * <ul>
+ *     <li>concert.retry.maxAttempts - the most times to run the work, including the first (default 5)</li>
+ *     <li>concert.retry.baseDelayMillis - the longest wait before the first retry (default 5)</li>
+ *     <li>concert.retry.maxDelayMillis - the longest wait before any retry (default 100)</li>
+ * </ul>
+ */
+public class TransactionRetrier {
+    private static Logger LOGGER = LoggerFactory.getLogger(TransactionRetrier.class);
+
+    private static TransactionRetrier _instance = null;
+
+    private final int maxAttempts = Math.max(1, Integer.getInteger("concert.retry.maxAttempts", 5));
+    private final long baseDelayMillis = Long.getLong("concert.retry.baseDelayMillis", 5);
+    private final long maxDelayMillis = Long.getLong("concert.retry.maxDelayMillis", 100);
+
+    private final AtomicLong succeededFirstTime = new AtomicLong();
+    private final AtomicLong succeededAfterRetry = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    protected TransactionRetrier() {
+    }
+
+    public static synchronized TransactionRetrier instance() {
+        if (_instance == null) {
+            _instance = new TransactionRetrier();
+        }
+        return _instance;
+    }
+
+    /**
+     * Runs some work and commits it, retrying if it fails with a version conflict on the given kind of entity.
+     * @param em The EntityManager to make the first attempt with, whose transaction has been begun. Each retry gets a
+     *           new EntityManager, so the work must not use entities loaded before it was called, and must look up
+     *           anything it needs with the EntityManager it is given. All of the EntityManagers are closed by the time
+     *           this returns.
+     * @param retryOn The kind of entity that version conflicts can be retried on.
+     * @param work The work to do, given an EntityManager with an active transaction.
+     * @return What the work returned, in the attempt that committed.
+     * @throws RuntimeException whatever the last attempt failed with, if it didn't commit. The transaction will have
+     * been rolled back.
+     */
+    public <T> T execute(EntityManager em, Class<?> retryOn, Function<EntityManager, T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = work.apply(em);
+                em.getTransaction().commit();
+
+                (attempt == 1 ? succeededFirstTime : succeededAfterRetry).incrementAndGet();
+                return result;
+            } catch (RuntimeException e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+
+                if (!isVersionConflict(e, retryOn)) {
+                    failed.incrementAndGet();
+                    throw e;
+                }
+
+                if (attempt == maxAttempts) {
+                    exhausted.incrementAndGet();
+                    LOGGER.warn("Giving up on a transaction after " + attempt + " version conflicts on " +
+                            retryOn.getSimpleName());
+                    throw e;
+                }
+            } finally {
+                em.close();
+            }
+
+            retries.incrementAndGet();
+            backOff(attempt);
+
+            em = PersistenceManager.instance().createEntityManager();
+            em.getTransaction().begin();
+        }
+    }
+
+    /**
+     * Checks whether a transaction failed because another transaction changed one of its entities first.
+     * @param e What the transaction failed with.
+     * @param entityClass The kind of entity to check for conflicts on, or null for any entity. Conflicts that Hibernate
+     *                    can't attribute to an entity (e.g. in a batch of updates) are only counted for any entity.
+     * @return Whether it was a version conflict on that kind of entity.
+     */
+    public static boolean isVersionConflict(Throwable e, Class<?> entityClass) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StaleObjectStateException) {
+                return entityClass == null ||
+                        entityClass.getName().equals(((StaleObjectStateException) cause).getEntityName());
+            }
+
+            if (cause instanceof OptimisticLockException && ((OptimisticLockException) cause).getEntity() != null) {
+                return entityClass == null || entityClass.isInstance(((OptimisticLockException) cause).getEntity());
+            }
+
+            if (cause instanceof StaleStateException && entityClass == null) {
+                return true;
+            }
+
+            if (cause instanceof OptimisticLockException && entityClass == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return How many transactions committed first time or after retrying, how many retries there have been, and
+     * how many transactions failed even after retrying (exhausted) or with an error that isn't retried (failed).
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maxAttempts", maxAttempts);
+        metrics.put("succeededFirstTime", succeededFirstTime.get());
+        metrics.put("succeededAfterRetry", succeededAfterRetry.get());
+        metrics.put("retries", retries.get());
+        metrics.put("exhausted", exhausted.get());
+        metrics.put("failed", failed.get());
+        return metrics;
+    }
+
+    /**
+     * Waits for a random time before a retry, which grows with the number of attempts made so far.
+     */
+    private void backOff(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,66 +2,86 @@ package se325.assignment01.concert.service.util;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import se325.assignment01.concert.service.domain.Concert;
 import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.services.AdmissionController;
+import se325.assignment01.concert.service.services.Authenticator;
+import se325.assignment01.concert.service.services.AvailabilityBroadcaster;
+import se325.assignment01.concert.service.services.CatalogueCache;
 import se325.assignment01.concert.service.services.ConcertApplication;
+import se325.assignment01.concert.service.services.IdempotencyStore;
 import se325.assignment01.concert.service.services.PersistenceManager;
+import se325.assignment01.concert.service.services.RateLimiter;
+import se325.assignment01.concert.service.services.SeatAvailabilityManager;
+import se325.assignment01.concert.service.services.SeatHoldManager;
+import se325.assignment01.concert.service.services.SubscriptionRegistry;
 
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
 import java.time.LocalDateTime;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Collection;
 
 public class ConcertUtils {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ConcertUtils.class);
 
     /**
-     * This method will clear all seat and booking data from the database. Then, it will create all Seat objects for
-     * all concerts and dates.
+     * This method will discard the in-memory seat availability and any cached catalogue responses, e.g. after the
+     * database has been reset. Seats are not created here: the seats for each concert date are created the first time
+     * that date is accessed (see {@link SeatAvailabilityManager}), so this takes the same time however many concerts
+     * and dates there are.
      */
     public static void initConcerts() {
         LOGGER.debug("initConcerts(): Creating the Application");
 
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        try {
+        // holds are claimed in the availability, so they go with it.
+        SeatHoldManager.instance().clear();
+        SeatAvailabilityManager.instance().clear();
 
-            // Get all concerts
-            em.getTransaction().begin();
-            TypedQuery<Concert> query = em.createQuery("select c from Concert c", Concert.class);
-            List<Concert> concerts = query.getResultList();
+        // the catalogue may have been reloaded along with the seats.
+        CatalogueCache.instance().invalidate();
 
-            // Get all dates for all concerts
-            Set<LocalDateTime> allDates = new HashSet<>();
-            for (Concert c : concerts) {
-                Set<LocalDateTime> dates = c.getDates();
-                allDates.addAll(dates);
-            }
-            em.getTransaction().commit();
+        // and cached authentication tokens may have been deleted.
+        Authenticator.instance().clear();
 
-            LOGGER.debug("initConcerts(): There are " + allDates.size() + " concert dates");
+        // rate limits are kept per user, and the users have been reloaded too.
+        RateLimiter.instance().clear();
 
-            // For each concert date, create the seats for that date and persist them.
-            int seatCount = 0;
-            for (LocalDateTime date : allDates) {
+        // as may the bookings that stored outcomes refer to.
+        IdempotencyStore.instance().clear();
 
-                em.getTransaction().begin();
-                Set<Seat> seatsForDate = TheatreLayout.createSeatsFor(date);
-                for (Seat s : seatsForDate) {
-                    em.persist(s);
-                    seatCount++;
-                }
-                em.getTransaction().commit();
+        // and clients waiting on the old dates and bookings are let go.
+        AdmissionController.instance().clear();
+        AvailabilityBroadcaster.instance().clear();
+        SubscriptionRegistry.instance().clear();
+    }
 
-                // Ensures we aren't braking the EM with thousands of seat entities.
-                em.clear();
-            }
+    /**
+     * Creates and persists the seats for each of the given dates, in one transaction. The seats are inserted in JDBC
+     * batches: the persistence context is flushed and cleared after every batch, so it never holds more than a batch
+     * of seats.
+     *
+     * @param em    the EntityManager to persist the seats with. It must not have an active transaction.
+     * @param dates the dates to create seats for
+     * @return the number of seats created
+     */
+    public static int createSeats(EntityManager em, Collection<LocalDateTime> dates) {
+        int batchSize = PersistenceManager.instance().getBatchSize();
+        int seatCount = 0;
+
+        em.getTransaction().begin();
+        for (LocalDateTime date : dates) {
+            for (Seat s : TheatreLayout.createSeatsFor(date)) {
+                em.persist(s);
+                seatCount++;
 
-            LOGGER.debug("initConcerts(): Created " + seatCount + " seats!");
-        } finally {
-            em.close();
+                if (seatCount % batchSize == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
         }
+        em.getTransaction().commit();
+        em.clear();
+
+        return seatCount;
     }
 }
@@ -0,0 +1,220 @@
+package se325.assignment01.concert.service.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded cache whose entries expire. Each entry has its own expiry time, after which it is
+ * treated as absent.
+ * <p>
+ * Entries are kept in a ConcurrentHashMap, so lookups don't lock anything and can run in parallel; each lookup just
+ * records when the entry was last used. Once the cache grows past its maximum size, the thread that added the entry
+ * evicts in a batch: expired entries first, then the least recently used ones, until the cache is a tenth below its
+ * maximum size. Only one thread evicts at a time, and the others carry on without waiting, so the cache can briefly
+ * hold a few more entries than its maximum, and eviction is only approximately least recently used.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ */
+public class ExpiringCache<K, V> {
+
+    private final int maxEntries;
+    private final long defaultTtlMillis;
+
+    private final ConcurrentMap<K, CachedValue<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries       the most entries to hold at once
+     * @param defaultTtlMillis how long entries added with {@link #put(Object, Object)} are kept for
+     */
+    public ExpiringCache(int maxEntries, long defaultTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.defaultTtlMillis = defaultTtlMillis;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value for the key, or null if there is none or it has expired.
+     */
+    public V get(K key) {
+        long now = System.nanoTime();
+        CachedValue<V> entry = entries.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.isExpired(now)) {
+            if (entries.remove(key, entry)) {
+                expirations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        entry.lastUsed = now;
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Adds or replaces an entry, which expires after the default time to live.
+     */
+    public void put(K key, V value) {
+        put(key, value, defaultTtlMillis);
+    }
+
+    /**
+     * Adds or replaces an entry, which expires after the given time (or the default time to live, if that is sooner).
+     */
+    public void put(K key, V value, long ttlMillis) {
+        long now = System.nanoTime();
+        entries.put(key, new CachedValue<>(value, now, now + Math.min(ttlMillis, defaultTtlMillis) * 1_000_000));
+        evictIfFull();
+    }
+
+    /**
+     * Adds an entry, which expires after the default time to live, unless there is already an unexpired entry for
+     * the key.
+     *
+     * @return the existing value for the key, or null if there wasn't one and the entry was added
+     */
+    public V putIfAbsent(K key, V value) {
+        long now = System.nanoTime();
+        CachedValue<V> added = new CachedValue<>(value, now, now + defaultTtlMillis * 1_000_000);
+
+        while (true) {
+            CachedValue<V> entry = entries.putIfAbsent(key, added);
+
+            if (entry == null) {
+                evictIfFull();
+                return null;
+            }
+
+            if (!entry.isExpired(now)) {
+                entry.lastUsed = now;
+                return entry.value;
+            }
+
+            // replace the expired entry, unless someone else has just replaced it
+            if (entries.replace(key, entry, added)) {
+                expirations.incrementAndGet();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for a key, if there is one.
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Removes all expired entries. Expired entries are otherwise only removed when they are looked up or evicted.
+     *
+     * @return the number of entries removed
+     */
+    public int removeExpired() {
+        long now = System.nanoTime();
+        int removed = 0;
+
+        for (Map.Entry<K, CachedValue<V>> entry : entries.entrySet()) {
+            if (entry.getValue().isExpired(now) && entries.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+
+        expirations.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * @return Counters describing how well the cache is working.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("entries", entries.size());
+        metrics.put("maxEntries", maxEntries);
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("expirations", expirations.get());
+        metrics.put("evictions", evictions.get());
+        return metrics;
+    }
+
+    /**
+     * If the cache has grown past its maximum size, and nobody else is already evicting, removes the expired entries
+     * and then the least recently used ones, so that the cache is a tenth below its maximum size. Evicting in batches
+     * means that the entries only have to be scanned once for every so many additions.
+     */
+    private void evictIfFull() {
+        if (entries.size() <= maxEntries || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            removeExpired();
+
+            int excess = entries.size() - (maxEntries - maxEntries / 10);
+            if (excess <= 0) {
+                return;
+            }
+
+            // find the time that the excess least recently used entries were last used by, and evict them. Entries
+            // used at that exact time are evicted too, so a few more than the excess may go.
+            long[] lastUsed = entries.values().stream().mapToLong(entry -> entry.lastUsed).toArray();
+            if (lastUsed.length == 0) {
+                return;
+            }
+            Arrays.sort(lastUsed);
+            long evictUpTo = lastUsed[Math.min(excess, lastUsed.length) - 1];
+
+            for (Map.Entry<K, CachedValue<V>> entry : entries.entrySet()) {
+                if (entry.getValue().lastUsed - evictUpTo <= 0 && entries.remove(entry.getKey(), entry.getValue())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static class CachedValue<V> {
+        private final V value;
+        private final long expiresAt;
+
+        // when the entry was added or last looked up
+        private volatile long lastUsed;
+
+        private CachedValue(V value, long now, long expiresAt) {
+            this.value = value;
+            this.lastUsed = now;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package se325.assignment01.concert.service.util;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * One page of a list that is paged through by ID (keyset pagination). Each page holds the items with IDs after a
+ * cursor, in ID order, and the cursor to ask for the next page with is the ID of the page's last item.
+ *
+ * @param <T> the type of item in the page
+ */
+public class Page<T> {
+
+    public static final String CURSOR_PARAM = "cursor";
+    public static final String LIMIT_PARAM = "limit";
+
+    public static final int DEFAULT_SIZE = Integer.getInteger("concert.page.defaultSize", 100);
+    public static final int MAX_SIZE = Integer.getInteger("concert.page.maxSize", 500);
+
+    private final List<T> items;
+    private final Long nextCursor;
+
+    private Page(List<T> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Works out the page size to use for a request.
+     *
+     * @param limit the limit query parameter, or null if it wasn't given
+     * @return the page size: the limit, capped at MAX_SIZE, or DEFAULT_SIZE if no limit was given
+     * @throws WebApplicationException with status 400 (Bad Request) if the limit is not positive
+     */
+    public static int size(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_SIZE;
+        }
+        if (limit < 1) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        return Math.min(limit, MAX_SIZE);
+    }
+
+    /**
+     * Creates a page from the results of a query for one more item than the page size, so that it is known whether
+     * there is another page without counting the rest of the list.
+     *
+     * @param results up to size + 1 items, in ID order
+     * @param size    the page size
+     * @param idOf    gets the ID of an item
+     * @return the page, holding at most size items
+     */
+    public static <T> Page<T> of(List<T> results, int size, ToLongFunction<T> idOf) {
+        if (results.size() <= size) {
+            return new Page<>(results, null);
+        }
+
+        List<T> items = results.subList(0, size);
+        return new Page<>(items, idOf.applyAsLong(items.get(size - 1)));
+    }
+
+    /**
+     * @param items the items to replace this page's items with, e.g. the entities for a page of IDs
+     * @return a page holding the given items, with the same next cursor as this page
+     */
+    public <R> Page<R> withItems(List<R> items) {
+        return new Page<>(items, nextCursor);
+    }
+
+    /**
+     * @return the items in this page.
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the cursor for the next page, or null if this is the last page.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @param uriInfo the request for this page
+     * @return the URI of the next page (the request URI, with the cursor moved on), or null if this is the last page.
+     */
+    public URI nextUri(UriInfo uriInfo) {
+        return nextUri(uriInfo, nextCursor);
+    }
+
+    /**
+     * @param uriInfo    the request for a page
+     * @param nextCursor the cursor for the page after it, or null if there isn't one
+     * @return the URI of the next page, or null if there isn't one.
+     */
+    public static URI nextUri(UriInfo uriInfo, Long nextCursor) {
+        if (nextCursor == null) {
+            return null;
+        }
+        return uriInfo.getRequestUriBuilder().replaceQueryParam(CURSOR_PARAM, nextCursor).build();
+    }
+}
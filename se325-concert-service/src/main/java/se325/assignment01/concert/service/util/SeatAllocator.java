@@ -0,0 +1,109 @@
+package se325.assignment01.concert.service.util;
+
+/**
+ * Utility class that picks the best free seats for a party, from a date's {@link SeatAvailability}.
+ * <p>
+ * The best seats are a single block of adjacent seats in one row, as close to the front as possible (and so in the
+ * most expensive price band, unless a price band is asked for), and as close to the middle of the row as possible.
+ * If no row has a block that big, the party is split as evenly as possible across as few adjacent rows as possible,
+ * each row's share again as close to the middle as possible.
+ * <p>
+ * The search only reads the availability, so its result may be out of date by the time the seats are claimed: the
+ * caller should try to claim them and, if that fails, search again.
+ */
+public class SeatAllocator {
+
+    /**
+     * Finds the best free seats for a party.
+     *
+     * @param availability the seats that are taken on the date
+     * @param numSeats     the size of the party
+     * @param band         the price band to find seats in, or null for any price band
+     * @return the positions of the seats, or null if there aren't enough free seats together (including when the
+     * party is bigger than the price band, or the theatre)
+     */
+    public static int[] findBestAvailable(SeatAvailability availability, int numSeats, TheatreLayout.PriceBand band) {
+        int firstRow = band == null ? 0 : TheatreLayout.firstRowOf(band);
+        int numRows = band == null ? TheatreLayout.NUM_ROWS : band.numRows;
+
+        // don't size the search for a party that could never fit.
+        if (numSeats > numRows * TheatreLayout.NUM_SEATS_PER_ROW) {
+            return null;
+        }
+
+        for (int rowsUsed = 1; rowsUsed <= numRows; rowsUsed++) {
+            for (int rowNum = firstRow; rowNum + rowsUsed <= firstRow + numRows; rowNum++) {
+                int[] seats = findInRows(availability, numSeats, rowNum, rowsUsed);
+                if (seats != null) {
+                    return seats;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Splits a party as evenly as possible across the given rows, and finds a block of seats for each share.
+     *
+     * @return the positions of the seats, or null if any of the rows doesn't have a block for its share
+     */
+    private static int[] findInRows(SeatAvailability availability, int numSeats, int firstRow, int numRows) {
+        int[] seats = new int[numSeats];
+        int found = 0;
+
+        for (int row = 0; row < numRows; row++) {
+            // the front rows take any seats left over from an even split
+            int share = numSeats / numRows + (row < numSeats % numRows ? 1 : 0);
+            int start = findBlockInRow(availability, firstRow + row, share);
+
+            if (start < 0) {
+                return null;
+            }
+
+            for (int seat = 0; seat < share; seat++) {
+                seats[found++] = start + seat;
+            }
+        }
+
+        return seats;
+    }
+
+    /**
+     * Finds the free block of seats in a row that is closest to the middle of the row.
+     *
+     * @return the position of the first seat in the block, or -1 if the row doesn't have a block that big
+     */
+    private static int findBlockInRow(SeatAvailability availability, int rowNum, int size) {
+        if (size < 1 || size > TheatreLayout.NUM_SEATS_PER_ROW) {
+            return -1;
+        }
+
+        int rowStart = rowNum * TheatreLayout.NUM_SEATS_PER_ROW;
+        int bestStart = -1;
+        int bestDistance = Integer.MAX_VALUE;
+
+        // slide a window of the block's size along the row, counting the taken seats in it
+        int taken = 0;
+        for (int seat = 0; seat < TheatreLayout.NUM_SEATS_PER_ROW; seat++) {
+            if (availability.isTaken(rowStart + seat)) {
+                taken++;
+            }
+            if (seat >= size && availability.isTaken(rowStart + seat - size)) {
+                taken--;
+            }
+
+            int start = seat - size + 1;
+            if (start >= 0 && taken == 0) {
+                // twice the distance between the middle of the block and the middle of the row
+                int distance = Math.abs(2 * start + size - TheatreLayout.NUM_SEATS_PER_ROW);
+                if (distance < bestDistance) {
+                    bestStart = rowStart + start;
+                    bestDistance = distance;
+                }
+            }
+        }
+
+        return bestStart;
+    }
+}
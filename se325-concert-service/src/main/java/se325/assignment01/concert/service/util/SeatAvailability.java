@@ -0,0 +1,181 @@
+package se325.assignment01.concert.service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free record of which seats are taken for a single concert date. Each seat in the {@link TheatreLayout} is
+ * represented by one bit, packed into 64-bit words, and indexed by {@link TheatreLayout#indexOf(String)}.
+ * <p>
+ * Seats are claimed with compare-and-swap, so that a request for seats that are already taken can be rejected
+ * without going to the database. Either all of the requested seats are claimed, or none of them are.
+ * <p>
+ * Separately from the claims, which include seats that are only held or whose bookings are still in progress, it
+ * records which seats' bookings have been committed, along with a count of them, so that the seats that are booked and
+ * the proportion of seats booked can be read without querying the SEAT table.
+ */
+public class SeatAvailability {
+
+    private static final int SEATS_PER_WORD = Long.SIZE;
+
+    private final AtomicLongArray words;
+    // the seats whose bookings have been committed, which are always claimed too
+    private final AtomicLongArray bookedWords;
+    private final AtomicInteger bookedSeats = new AtomicInteger();
+    private int totalSeats;
+
+    public SeatAvailability() {
+        words = new AtomicLongArray((TheatreLayout.NUM_SEATS_IN_THEATRE + SEATS_PER_WORD - 1) / SEATS_PER_WORD);
+        bookedWords = new AtomicLongArray(words.length());
+    }
+
+    /**
+     * Atomically claims all of the given seats.
+     *
+     * @param seatIndices positions of the seats to claim.
+     * @return true if every seat was free and is now claimed by the caller, false if any of them were already
+     * taken (in which case nothing is claimed).
+     */
+    public boolean tryClaim(int[] seatIndices) {
+        long[] masks = toMasks(seatIndices);
+
+        // Words are always claimed in ascending order so that two competing claims can't each hold a word that
+        // the other one needs.
+        for (int word = 0; word < masks.length; word++) {
+            if (masks[word] == 0) {
+                continue;
+            }
+
+            while (true) {
+                long current = words.get(word);
+
+                if ((current & masks[word]) != 0) {
+                    // Someone else has at least one of these seats, so give back what we've claimed so far.
+                    for (int claimed = 0; claimed < word; claimed++) {
+                        clear(claimed, masks[claimed]);
+                    }
+                    return false;
+                }
+
+                if (words.compareAndSet(word, current, current | masks[word])) {
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Frees the given seats. This should only be called by the owner of a successful claim, e.g. when the booking
+     * transaction for those seats fails.
+     *
+     * @param seatIndices positions of the seats to free.
+     */
+    public void release(int[] seatIndices) {
+        long[] masks = toMasks(seatIndices);
+
+        for (int word = 0; word < masks.length; word++) {
+            clear(word, masks[word]);
+        }
+    }
+
+    /**
+     * Adds a seat that exists in the database, taking it straight away if it is already booked. This is only called
+     * while the availability is being built, before it is shared with other threads.
+     *
+     * @param seatIndex position of the seat.
+     * @param booked    whether the seat is booked in the database.
+     */
+    public void loadSeat(int seatIndex, boolean booked) {
+        totalSeats++;
+
+        if (booked) {
+            long mask = 1L << (seatIndex % SEATS_PER_WORD);
+            words.getAndUpdate(seatIndex / SEATS_PER_WORD, current -> current | mask);
+            bookedWords.getAndUpdate(seatIndex / SEATS_PER_WORD, current -> current | mask);
+            bookedSeats.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that bookings for claimed seats have been committed to the database.
+     *
+     * @param seatIndices positions of the seats booked.
+     */
+    public void recordBooked(int[] seatIndices) {
+        long[] masks = toMasks(seatIndices);
+
+        for (int word = 0; word < masks.length; word++) {
+            long mask = masks[word];
+            if (mask != 0) {
+                bookedWords.getAndUpdate(word, current -> current | mask);
+            }
+        }
+
+        bookedSeats.addAndGet(seatIndices.length);
+    }
+
+    /**
+     * @return the number of seats with committed bookings.
+     */
+    public int getBookedSeats() {
+        return bookedSeats.get();
+    }
+
+    /**
+     * @return the number of seats that exist for this date.
+     */
+    public int getTotalSeats() {
+        return totalSeats;
+    }
+
+    /**
+     * @return the percentage of seats with committed bookings, rounded down.
+     */
+    public int getPercentageBooked() {
+        return totalSeats == 0 ? 0 : getBookedSeats() * 100 / totalSeats;
+    }
+
+    /**
+     * @param seatIndex position of the seat.
+     * @return whether the seat is currently taken.
+     */
+    public boolean isTaken(int seatIndex) {
+        return (words.get(seatIndex / SEATS_PER_WORD) & (1L << (seatIndex % SEATS_PER_WORD))) != 0;
+    }
+
+    /**
+     * @return the labels of all seats with committed bookings, in theatre order. Seats that are only held, or whose
+     * bookings are still in progress, aren't included.
+     */
+    public List<String> getBookedSeatLabels() {
+        List<String> labels = new ArrayList<>();
+
+        for (int seatIndex = 0; seatIndex < TheatreLayout.NUM_SEATS_IN_THEATRE; seatIndex++) {
+            if ((bookedWords.get(seatIndex / SEATS_PER_WORD) & (1L << (seatIndex % SEATS_PER_WORD))) != 0) {
+                labels.add(TheatreLayout.labelOf(seatIndex));
+            }
+        }
+
+        return labels;
+    }
+
+    private void clear(int word, long mask) {
+        if (mask != 0) {
+            words.getAndUpdate(word, current -> current & ~mask);
+        }
+    }
+
+    private long[] toMasks(int[] seatIndices) {
+        long[] masks = new long[words.length()];
+
+        for (int seatIndex : seatIndices) {
+            masks[seatIndex / SEATS_PER_WORD] |= 1L << (seatIndex % SEATS_PER_WORD);
+        }
+
+        return masks;
+    }
+}
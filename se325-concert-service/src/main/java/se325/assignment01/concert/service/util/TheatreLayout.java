@@ -62,6 +62,94 @@ public class TheatreLayout {
 
     }
 
+    /**
+     * Converts a seat label (e.g. "C5") into its position in the theatre, counting seats row by row from the front
+     * left. The position is what the in-memory seat structures are indexed by.
+     *
+     * @param seatLabel the seat label
+     * @return the seat's position, or -1 if the label does not name a seat in this theatre
+     */
+    public static int indexOf(String seatLabel) {
+        if (seatLabel == null || seatLabel.length() < 2) {
+            return -1;
+        }
+
+        int rowNum = seatLabel.charAt(0) - 'A';
+        if (rowNum < 0 || rowNum >= NUM_ROWS) {
+            return -1;
+        }
+
+        int seatNum;
+        try {
+            seatNum = Integer.parseInt(seatLabel.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+
+        if (seatNum < 1 || seatNum > NUM_SEATS_PER_ROW || !seatLabel.equals(labelOf(rowNum, seatNum))) {
+            return -1;
+        }
+
+        return rowNum * NUM_SEATS_PER_ROW + (seatNum - 1);
+    }
+
+    /**
+     * Converts a seat position, as returned by {@link #indexOf(String)}, back into its label.
+     *
+     * @param index the seat's position
+     * @return the seat label
+     */
+    public static String labelOf(int index) {
+        return labelOf(index / NUM_SEATS_PER_ROW, index % NUM_SEATS_PER_ROW + 1);
+    }
+
+    private static String labelOf(int rowNum, int seatNum) {
+        return "" + (char) ('A' + rowNum) + seatNum;
+    }
+
+    /**
+     * @param name the name of a price band, ignoring case (e.g. "gold seating")
+     * @return the price band, or null if there is no price band with that name
+     */
+    public static PriceBand priceBandNamed(String name) {
+        for (PriceBand band : PRICE_BANDS) {
+            if (band.name.equalsIgnoreCase(name)) {
+                return band;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param band a price band
+     * @return the number of the first row (counting from 0 at the front) in the price band
+     */
+    public static int firstRowOf(PriceBand band) {
+        int rowNum = 0;
+        for (PriceBand current : PRICE_BANDS) {
+            if (current == band) {
+                return rowNum;
+            }
+            rowNum += current.numRows;
+        }
+        throw new IllegalArgumentException("Unknown price band: " + band.name);
+    }
+
+    /**
+     * @param rowNum the number of a row, counting from 0 at the front
+     * @return the price band that the row is in
+     */
+    public static PriceBand priceBandOfRow(int rowNum) {
+        int lastRow = -1;
+        for (PriceBand band : PRICE_BANDS) {
+            lastRow += band.numRows;
+            if (rowNum <= lastRow) {
+                return band;
+            }
+        }
+        throw new IllegalArgumentException("No such row: " + rowNum);
+    }
+
     public static class PriceBand {
         public String name;
         public BigDecimal price;
@@ -0,0 +1,129 @@
+package se325.assignment01.concert.service.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timer wheel, for running large numbers of short tasks after a delay, most of which are expected to be
+ * cancelled first (e.g. expiring holds that are usually confirmed or released).
+ * <p>
+ * Time is divided into ticks, and the wheel has a fixed number of slots, one per tick, that it goes round. A task is
+ * put in the slot for the tick it is due on, so scheduling and cancelling take constant time however many tasks are
+ * waiting, and each tick only looks at the tasks in one slot. Tasks due more than one turn of the wheel away just
+ * stay in their slot until the right turn. Tasks run up to a tick late, on the wheel's thread, so they must be quick.
+ */
+public class TimerWheel {
+    private static Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickMillis;
+    private final List<List<Timeout>> slots;
+    private final long startNanos = System.nanoTime();
+
+    // the last tick whose slot has been run; only changed by the wheel's thread
+    private long lastTick = 0;
+
+    /**
+     * @param name       the name of the wheel's thread
+     * @param tickMillis how long each tick is
+     * @param numSlots   how many ticks one turn of the wheel is
+     */
+    public TimerWheel(String name, long tickMillis, int numSlots) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(numSlots);
+        for (int i = 0; i < numSlots; i++) {
+            slots.add(new ArrayList<>());
+        }
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a task after (at least) the given delay, unless it is cancelled first.
+     *
+     * @return the scheduled task, to cancel it with
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        // round up, so the task never runs early
+        long dueTick = currentTick() + Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(task, dueTick);
+
+        List<Timeout> slot = slots.get((int) (dueTick % slots.size()));
+        synchronized (slot) {
+            slot.add(timeout);
+        }
+        return timeout;
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / (tickMillis * 1_000_000);
+    }
+
+    /**
+     * Runs the tasks in the slots for every tick that has passed since the last one, catching up if ticks were
+     * missed.
+     */
+    private void tick() {
+        long now = currentTick();
+
+        for (long tick = lastTick + 1; tick <= now; tick++) {
+            List<Timeout> due = new ArrayList<>();
+            List<Timeout> slot = slots.get((int) (tick % slots.size()));
+
+            synchronized (slot) {
+                for (Iterator<Timeout> iterator = slot.iterator(); iterator.hasNext(); ) {
+                    Timeout timeout = iterator.next();
+                    if (timeout.cancelled) {
+                        iterator.remove();
+                    } else if (timeout.dueTick <= tick) {
+                        iterator.remove();
+                        due.add(timeout);
+                    }
+                }
+            }
+
+            for (Timeout timeout : due) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Timer task failed", e);
+                }
+            }
+        }
+
+        lastTick = Math.max(lastTick, now);
+    }
+
+    /**
+     * A task that has been scheduled on the wheel.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long dueTick;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long dueTick) {
+            this.task = task;
+            this.dueTick = dueTick;
+        }
+
+        /**
+         * Stops the task from running, if it hasn't already. It is removed from the wheel when its slot next comes
+         * round.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -8,16 +8,25 @@ import se325.assignment01.concert.common.types.Genre;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.sse.InboundSseEvent;
+import javax.ws.rs.sse.SseEventSource;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
@@ -144,6 +153,71 @@ public class ConcertResourceIT {
 
     }
 
+    /**
+     * Tests that catalogue responses carry an ETag, and that a client sending that ETag back in an If-None-Match header
+     * gets a 304 response instead of the catalogue again.
+     */
+    @Test
+    public void testGetAllConcertsNotModified() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        EntityTag etag = response.getEntityTag();
+        assertNotNull(etag);
+        response.close();
+
+        response = client.target(WEB_SERVICE_URI + "/concerts").request().header("If-None-Match", etag).get();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response.close();
+
+        // A different resource shouldn't match the same ETag.
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request().header("If-None-Match", etag).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("PTX: The World Tour", response.readEntity(ConcertDTO.class).getTitle());
+    }
+
+    /**
+     * Tests that concerts can be paged through by following each page's "next" link, and that the last page has no
+     * such link.
+     */
+    @Test
+    public void testGetAllConcertsPaged() {
+
+        List<ConcertDTO> concerts = new ArrayList<>();
+        Response response = client.target(WEB_SERVICE_URI + "/concerts").queryParam("limit", 3).request().get();
+        int pages = 1;
+
+        while (true) {
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            List<ConcertDTO> page = response.readEntity(new GenericType<List<ConcertDTO>>() {
+            });
+            assertTrue(page.size() <= 3);
+            concerts.addAll(page);
+
+            if (!response.hasLink("next")) {
+                break;
+            }
+
+            response = client.target(response.getLink("next")).request().get();
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(8, concerts.size());
+        assertEquals(1L, (long) concerts.get(0).getId());
+        assertEquals(8L, (long) concerts.get(7).getId());
+    }
+
+    /**
+     * Tests that a 400 (Bad Request) is returned when a page size less than 1 is requested.
+     */
+    @Test
+    public void testGetAllConcertsBadLimit() {
+        Response response = client.target(WEB_SERVICE_URI + "/concerts").queryParam("limit", 0).request().get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     /**
      * Tests that all concert summaries are returned when requested. Concert summaries contain only the id, title, and
      * image name for each concert.
@@ -801,6 +875,579 @@ public class ConcertResourceIT {
 
     }
 
+    /**
+     * Tests that an unauthenticated client can't stream seat availability.
+     */
+    @Test
+    public void testUnauthorizedAvailabilityStream() {
+        Response response = client
+                .target(WEB_SERVICE_URI + "/concerts/1/dates/2020-02-15T20:00:00/availability/stream")
+                .request(MediaType.SERVER_SENT_EVENTS).get();
+
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Tests that, when authenticated, a client can stream seat availability for a concert / date. It should receive a
+     * snapshot of the seats already booked when it connects, and then the seats booked by other users as they are
+     * booked, over the same connection.
+     */
+    @Test
+    public void testAvailabilityStream() throws InterruptedException {
+
+        // Log in, and book some seats before we start watching
+        login(client, "testuser", "pa55word");
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+        attemptBooking(client, 1, date, "C5", "C6");
+
+        BlockingQueue<InboundSseEvent> events = new LinkedBlockingQueue<>();
+        WebTarget target = client.target(WEB_SERVICE_URI + "/concerts/1/dates/2020-02-15T20:00:00/availability/stream");
+
+        Client user2Client = ClientBuilder.newClient();
+        try (SseEventSource eventSource = SseEventSource.target(target).build()) {
+            eventSource.register(events::add);
+            eventSource.open();
+
+            // We should be told about the seats that were already booked
+            InboundSseEvent snapshot = events.poll(2, TimeUnit.SECONDS);
+            assertNotNull(snapshot);
+            assertEquals("snapshot", snapshot.getName());
+            SeatAvailabilityDTO availability = snapshot.readData(SeatAvailabilityDTO.class, MediaType.APPLICATION_JSON_TYPE);
+            assertEquals(118, availability.getNumSeatsRemaining());
+            assertEquals(Arrays.asList("C5", "C6"), availability.getBookedSeats());
+
+            // Another user books a whole row
+            login(user2Client, "testuser2", "pa55word");
+            attemptBooking(user2Client, 1, date, 'D', 'D');
+
+            // We should be told about just the new seats
+            InboundSseEvent booked = events.poll(2, TimeUnit.SECONDS);
+            assertNotNull(booked);
+            assertEquals("booked", booked.getName());
+            availability = booked.readData(SeatAvailabilityDTO.class, MediaType.APPLICATION_JSON_TYPE);
+            assertEquals(106, availability.getNumSeatsRemaining());
+            assertEquals(12, availability.getBookedSeats().size());
+            assertTrue(availability.getBookedSeats().contains("D1"));
+
+        } finally {
+            user2Client.close();
+        }
+    }
+
+    /**
+     * Tests that a concert date's seats are only created the first time the date is accessed, and that there are no
+     * seats for a date that no concert is on.
+     */
+    @Test
+    public void testSeatsMaterializedOnFirstAccess() {
+        assertEquals(0, getMaterializedDates());
+
+        List<SeatDTO> seats = client.target(WEB_SERVICE_URI + "/seats/2020-02-15T20:00:00?status=Any")
+                .request()
+                .get(new GenericType<List<SeatDTO>>() {
+                });
+        assertEquals(120, seats.size());
+        assertEquals(1, getMaterializedDates());
+
+        // Accessing the date again shouldn't create its seats again
+        seats = client.target(WEB_SERVICE_URI + "/seats/2020-02-15T20:00:00?status=Any")
+                .request()
+                .get(new GenericType<List<SeatDTO>>() {
+                });
+        assertEquals(120, seats.size());
+        assertEquals(1, getMaterializedDates());
+
+        seats = client.target(WEB_SERVICE_URI + "/seats/2020-02-16T20:00:00?status=Any")
+                .request()
+                .get(new GenericType<List<SeatDTO>>() {
+                });
+        assertEquals(0, seats.size());
+        assertEquals(1, getMaterializedDates());
+    }
+
+    /**
+     * Tests that once a token has been checked against the database, later requests with it are authenticated from
+     * the token cache.
+     */
+    @Test
+    public void testAuthenticationCached() {
+        login(client, "testuser", "pa55word");
+
+        Response response = client.target(WEB_SERVICE_URI + "/bookings").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+        long hits = getTokenCacheHits();
+
+        response = client.target(WEB_SERVICE_URI + "/bookings").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+        assertEquals(hits + 1, getTokenCacheHits());
+    }
+
+    /**
+     * Tests that when the same user makes several bookings at once (e.g. from different browser tabs), they all
+     * succeed, even though each of them changes the user.
+     */
+    @Test
+    public void testConcurrentBookingsBySameUser() throws InterruptedException, ExecutionException {
+        List<Client> tabs = new ArrayList<>();
+        try {
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Client tab = ClientBuilder.newClient();
+                tabs.add(tab);
+                login(tab, "testuser", "pa55word");
+            }
+
+            for (int i = 0; i < tabs.size(); i++) {
+                BookingRequestDTO bReq = new BookingRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                        Arrays.asList("D" + (i * 2 + 1), "D" + (i * 2 + 2)));
+                responses.add(tabs.get(i).target(WEB_SERVICE_URI + "/bookings")
+                        .request().async().post(Entity.json(bReq)));
+            }
+
+            for (Future<Response> response : responses) {
+                assertEquals(Response.Status.CREATED.getStatusCode(), response.get().getStatus());
+            }
+
+            List<BookingDTO> bookings = tabs.get(0).target(WEB_SERVICE_URI + "/bookings")
+                    .request().get(new GenericType<List<BookingDTO>>() {
+                    });
+            assertEquals(4, bookings.size());
+        } finally {
+            for (Client tab : tabs) {
+                tab.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that held seats can't be booked by anyone else, and that confirming the hold books them.
+     */
+    @Test
+    public void testHoldAndConfirmSeats() {
+        login(client, "testuser", "pa55word");
+
+        Response response = holdSeats(client, 0, "C5", "C6");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        SeatHoldDTO hold = response.readEntity(SeatHoldDTO.class);
+        assertEquals(Arrays.asList("C5", "C6"), hold.getSeatLabels());
+        assertTrue(hold.getExpiresAt().isAfter(LocalDateTime.now()));
+
+        Client user2Client = ClientBuilder.newClient();
+        try {
+            login(user2Client, "testuser2", "pa55word");
+
+            // Someone else can't book or hold the seats
+            response = attemptBooking(user2Client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "C6");
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+            response = holdSeats(user2Client, 0, "C6", "C7");
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+
+            // or confirm the hold
+            response = user2Client.target(WEB_SERVICE_URI + "/holds/" + hold.getId() + "/confirm")
+                    .request().post(null);
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+        } finally {
+            user2Client.close();
+        }
+
+        response = client.target(WEB_SERVICE_URI + "/holds/" + hold.getId() + "/confirm").request().post(null);
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertNotNull(response.getLocation());
+
+        List<SeatDTO> bookedSeats = client.target(WEB_SERVICE_URI + "/seats/2020-02-15T20:00:00?status=Booked")
+                .request().get(new GenericType<List<SeatDTO>>() {
+                });
+        assertEquals(2, bookedSeats.size());
+
+        // A hold can only be confirmed once
+        response = client.target(WEB_SERVICE_URI + "/holds/" + hold.getId() + "/confirm").request().post(null);
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Tests that an availability stream only reports seats that are booked: held seats aren't in the snapshot, and are
+     * only sent once the hold is confirmed.
+     */
+    @Test
+    public void testAvailabilityStreamIgnoresHolds() throws InterruptedException {
+        login(client, "testuser", "pa55word");
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+        attemptBooking(client, 1, date, "C5");
+        SeatHoldDTO hold = holdSeats(client, 0, "D1", "D2").readEntity(SeatHoldDTO.class);
+
+        BlockingQueue<InboundSseEvent> events = new LinkedBlockingQueue<>();
+        WebTarget target = client.target(WEB_SERVICE_URI + "/concerts/1/dates/2020-02-15T20:00:00/availability/stream");
+
+        try (SseEventSource eventSource = SseEventSource.target(target).build()) {
+            eventSource.register(events::add);
+            eventSource.open();
+
+            InboundSseEvent snapshot = events.poll(2, TimeUnit.SECONDS);
+            assertNotNull(snapshot);
+            SeatAvailabilityDTO availability = snapshot.readData(SeatAvailabilityDTO.class, MediaType.APPLICATION_JSON_TYPE);
+            assertEquals(119, availability.getNumSeatsRemaining());
+            assertEquals(Arrays.asList("C5"), availability.getBookedSeats());
+
+            Response response = client.target(WEB_SERVICE_URI + "/holds/" + hold.getId() + "/confirm")
+                    .request().post(null);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+            InboundSseEvent booked = events.poll(2, TimeUnit.SECONDS);
+            assertNotNull(booked);
+            assertEquals("booked", booked.getName());
+            availability = booked.readData(SeatAvailabilityDTO.class, MediaType.APPLICATION_JSON_TYPE);
+            assertEquals(117, availability.getNumSeatsRemaining());
+            assertEquals(Arrays.asList("D1", "D2"), availability.getBookedSeats());
+        }
+    }
+
+    /**
+     * Tests that released and expired holds give their seats back, and that only the user who holds the seats can
+     * release them.
+     */
+    @Test
+    public void testReleaseAndExpireHolds() throws InterruptedException {
+        Response response = holdSeats(client, 0, "D1");
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+
+        login(client, "testuser", "pa55word");
+
+        SeatHoldDTO released = holdSeats(client, 0, "D1").readEntity(SeatHoldDTO.class);
+        SeatHoldDTO expiring = holdSeats(client, 1, "D2").readEntity(SeatHoldDTO.class);
+
+        Client user2Client = ClientBuilder.newClient();
+        try {
+            login(user2Client, "testuser2", "pa55word");
+
+            response = user2Client.target(WEB_SERVICE_URI + "/holds/" + released.getId()).request().delete();
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+
+            response = client.target(WEB_SERVICE_URI + "/holds/" + released.getId()).request().delete();
+            assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+
+            response = attemptBooking(user2Client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "D1");
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+            // The other hold's seat can be booked once it has expired
+            long deadline = System.currentTimeMillis() + 10000;
+            response = attemptBooking(user2Client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "D2");
+            while (response.getStatus() == Response.Status.FORBIDDEN.getStatusCode()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(200);
+                response = attemptBooking(user2Client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "D2");
+            }
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+            response = client.target(WEB_SERVICE_URI + "/holds/" + expiring.getId() + "/confirm")
+                    .request().post(null);
+            assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        } finally {
+            user2Client.close();
+        }
+    }
+
+    /**
+     * Tests that a user can't hold more than a row's worth of seats at once, across all of their holds, and that
+     * releasing a hold lets them hold more.
+     */
+    @Test
+    public void testHoldsLimitedPerUser() {
+        login(client, "testuser", "pa55word");
+
+        Response response = holdSeats(client, 0, "E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E9", "E10", "E11",
+                "E12", "F1");
+        assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+
+        response = holdSeats(client, 0, "E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E9", "E10", "E11", "E12");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        SeatHoldDTO hold = response.readEntity(SeatHoldDTO.class);
+
+        response = holdSeats(client, 0, "F1");
+        assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+
+        // The rejected seats weren't held, so someone else can book them
+        Client user2Client = ClientBuilder.newClient();
+        try {
+            login(user2Client, "testuser2", "pa55word");
+            response = attemptBooking(user2Client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "F1");
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        } finally {
+            user2Client.close();
+        }
+
+        response = client.target(WEB_SERVICE_URI + "/holds/" + hold.getId()).request().delete();
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+
+        response = holdSeats(client, 0, "F2");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Tests that booking the best available seats books a block in the middle of the front row of the requested
+     * price band, and that the booking can be fetched afterwards.
+     */
+    @Test
+    public void testBookBestAvailable() {
+        login(client, "testuser", "pa55word");
+
+        Response response = bookBestAvailable(client, 4, null);
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertEquals(Arrays.asList("A5", "A6", "A7", "A8"), seatLabelsOf(response.readEntity(BookingDTO.class)));
+
+        // Next best is to one side of those seats
+        response = bookBestAvailable(client, 4, null);
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertEquals(Arrays.asList("A1", "A2", "A3", "A4"), seatLabelsOf(response.readEntity(BookingDTO.class)));
+
+        response = bookBestAvailable(client, 2, "Silver Seating");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        BookingDTO booking = response.readEntity(BookingDTO.class);
+        assertEquals(Arrays.asList("I6", "I7"), seatLabelsOf(booking));
+        assertEquals(new BigDecimal(90), booking.getSeats().get(0).getPrice());
+
+        BookingDTO fetched = client.target(response.getLocation()).request().get(BookingDTO.class);
+        assertEquals(Arrays.asList("I6", "I7"), seatLabelsOf(fetched));
+
+        response = bookBestAvailable(client, 2, "Bronze Seating");
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response = bookBestAvailable(client, 0, null);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+        // Parties bigger than the price band or the whole theatre are rejected
+        response = bookBestAvailable(client, 37, "Gold Seating");
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response = bookBestAvailable(client, 121, null);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response = bookBestAvailable(client, Integer.MAX_VALUE, null);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Tests that a party too big for any one row is split across adjacent rows, and that a party too big for what is
+     * left of a price band is turned away.
+     */
+    @Test
+    public void testBookBestAvailableAcrossRows() {
+        login(client, "testuser", "pa55word");
+
+        Response response = bookBestAvailable(client, 15, "Gold Seating");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        List<String> labels = seatLabelsOf(response.readEntity(BookingDTO.class));
+        assertEquals(15, labels.size());
+        assertEquals(8, labels.stream().filter(label -> label.startsWith("F")).count());
+        assertEquals(7, labels.stream().filter(label -> label.startsWith("G")).count());
+
+        // There are only 21 Gold seats left
+        response = bookBestAvailable(client, 22, "Gold Seating");
+        assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Tests that retrying a booking with the same Idempotency-Key gets the first response again, rather than a 403
+     * for the seats that the first attempt booked, and that a key can't be reused for a different booking.
+     */
+    @Test
+    public void testIdempotentBooking() {
+        login(client, "testuser", "pa55word");
+
+        BookingRequestDTO bReq = new BookingRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                Arrays.asList("C5", "C6"));
+
+        Response response = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString("Idempotent-Replayed"));
+
+        Response retry = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+        assertEquals(Response.Status.CREATED.getStatusCode(), retry.getStatus());
+        assertEquals(response.getLocation(), retry.getLocation());
+        assertEquals("true", retry.getHeaderString("Idempotent-Replayed"));
+
+        // Only one booking was made
+        List<BookingDTO> bookings = client.target(WEB_SERVICE_URI + "/bookings")
+                .request().get(new GenericType<List<BookingDTO>>() {
+                });
+        assertEquals(1, bookings.size());
+
+        // Without the key, it's a new booking for seats that are taken
+        response = client.target(WEB_SERVICE_URI + "/bookings").request().post(Entity.json(bReq));
+        assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+
+        // and the key can't be used for different seats
+        bReq.setSeatLabels(Arrays.asList("C7", "C8"));
+        response = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+        assertEquals(422, response.getStatus());
+    }
+
+    /**
+     * Tests that idempotency keys belong to the user rather than to their token, so a retry still finds its outcome
+     * after the user logs in again, and that nothing is kept for requests whose token isn't valid.
+     */
+    @Test
+    public void testIdempotencyKeysScopedToUser() {
+        BookingRequestDTO bReq = new BookingRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                Arrays.asList("C5", "C6"));
+
+        Response response = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .cookie("auth", "made-up")
+                .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+        response.close();
+        assertEquals(0, getIdempotencyOutcomes());
+
+        login(client, "testuser", "pa55word");
+        response = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString("Idempotent-Replayed"));
+
+        // Logging in again gives a new token, but it's the same user
+        login(client, "testuser", "pa55word");
+        Response retry = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+        assertEquals(Response.Status.CREATED.getStatusCode(), retry.getStatus());
+        assertEquals(response.getLocation(), retry.getLocation());
+        assertEquals("true", retry.getHeaderString("Idempotent-Replayed"));
+
+        // Another user's key is their own
+        Client user2Client = ClientBuilder.newClient();
+        try {
+            login(user2Client, "testuser2", "pa55word");
+            bReq.setSeatLabels(Arrays.asList("C7", "C8"));
+            response = user2Client.target(WEB_SERVICE_URI + "/bookings").request()
+                    .header("Idempotency-Key", "booking-1").post(Entity.json(bReq));
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            assertNull(response.getHeaderString("Idempotent-Replayed"));
+        } finally {
+            user2Client.close();
+        }
+    }
+
+    /**
+     * Tests that a client that makes too many bookings in a short time is turned away with 429 (Too Many Requests)
+     * and told when to try again, while other clients can still book.
+     */
+    @Test
+    public void testBookingsRateLimited() {
+        login(client, "testuser", "pa55word");
+
+        // far more than the burst allowed, for a concert date that doesn't exist so that nothing is booked
+        Response limited = null;
+        for (int i = 0; i < 40 && limited == null; i++) {
+            Response response = attemptBooking(client, 1, LocalDateTime.of(2000, 1, 1, 0, 0, 0), "A1");
+            if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                limited = response;
+            } else {
+                assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+            }
+            response.close();
+        }
+
+        assertNotNull(limited);
+        assertTrue(Integer.parseInt(limited.getHeaderString("Retry-After")) >= 1);
+
+        Client otherClient = ClientBuilder.newClient();
+        try {
+            login(otherClient, "testuser2", "pa55word");
+            Response response = attemptBooking(otherClient, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "C5");
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        } finally {
+            otherClient.close();
+        }
+    }
+
+    /**
+     * Tests that sending a different made-up auth cookie with each request doesn't get around the rate limit, as
+     * requests with tokens that aren't valid are limited by address.
+     */
+    @Test
+    public void testMadeUpTokensRateLimited() {
+        BookingRequestDTO bReq = new BookingRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                Arrays.asList("A1"));
+
+        Response limited = null;
+        for (int i = 0; i < 40 && limited == null; i++) {
+            Response response = client.target(WEB_SERVICE_URI + "/bookings").request()
+                    .cookie("auth", "made-up-" + i)
+                    .post(Entity.json(bReq));
+            if (response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+                limited = response;
+            } else {
+                assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+            }
+            response.close();
+        }
+
+        assertNotNull(limited);
+    }
+
+    /**
+     * Tests that users who have just logged in are rate limited on their own, rather than along with everything else
+     * sent from their IP address, even when that address has already used up its allowance.
+     */
+    @Test
+    public void testLoggedInUsersNotLimitedByAddress() {
+        // each user's first booking straight after logging in is theirs to make
+        login(client, "testuser", "pa55word");
+        useUpAddressAllowance();
+        Response response = attemptBooking(client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "B1");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+        Client user2Client = ClientBuilder.newClient();
+        try {
+            login(user2Client, "testuser2", "pa55word");
+            useUpAddressAllowance();
+            response = attemptBooking(user2Client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "B2");
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        } finally {
+            user2Client.close();
+        }
+    }
+
+    /**
+     * Tests that bookings go through the date's waiting room, and that a booking made while nobody else is booking
+     * doesn't have to wait.
+     */
+    @Test
+    public void testBookingAdmitted() {
+        login(client, "testuser", "pa55word");
+
+        Response response = attemptBooking(client, 1, LocalDateTime.of(2020, 2, 15, 20, 0, 0), "C5");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertEquals("0", response.getHeaderString("X-Queue-Position"));
+
+        Map<String, Map<String, Object>> metrics = client
+                .target("http://localhost:10000/services/concert-service-metrics")
+                .request()
+                .get(new GenericType<Map<String, Map<String, Object>>>() {
+                });
+        assertTrue(((Number) metrics.get("admission").get("admitted")).longValue() >= 1);
+        assertTrue(((Map<?, ?>) metrics.get("admission").get("dates")).containsKey("2020-02-15T20:00"));
+    }
+
+    /**
+     * Tests that a booking with an invalid auth cookie is rejected before it gets a place in the waiting room.
+     */
+    @Test
+    public void testUnauthenticatedBookingNotAdmitted() {
+        long admitted = getAdmittedBookings();
+
+        BookingRequestDTO bReq = new BookingRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                Arrays.asList("C5"));
+        Response response = client.target(WEB_SERVICE_URI + "/bookings").request()
+                .cookie("auth", "not-a-token")
+                .post(Entity.json(bReq));
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString("X-Queue-Position"));
+        response.close();
+
+        assertEquals(admitted, getAdmittedBookings());
+    }
+
     // Helper methods
     // --------------------------------------------------------------------
 
@@ -813,6 +1460,80 @@ public class ConcertResourceIT {
                 .request().post(Entity.json(creds));
     }
 
+    /**
+     * Helper method - makes bookings with made-up tokens, from a client of their own, until this address is rate
+     * limited, so that its allowance is used up for the next fraction of a second.
+     */
+    private static void useUpAddressAllowance() {
+        BookingRequestDTO bReq = new BookingRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                Arrays.asList("A1"));
+
+        Client anonymousClient = ClientBuilder.newClient();
+        try {
+            int status = 0;
+            for (int i = 0; i < 40 && status != Response.Status.TOO_MANY_REQUESTS.getStatusCode(); i++) {
+                Response response = anonymousClient.target(WEB_SERVICE_URI + "/bookings").request()
+                        .cookie("auth", "made-up-" + i)
+                        .post(Entity.json(bReq));
+                status = response.getStatus();
+                response.close();
+            }
+            assertEquals(Response.Status.TOO_MANY_REQUESTS.getStatusCode(), status);
+        } finally {
+            anonymousClient.close();
+        }
+    }
+
+    /**
+     * Helper method - gets the number of idempotency keys whose outcomes are kept.
+     */
+    private int getIdempotencyOutcomes() {
+        Map<String, Map<String, Object>> metrics = client
+                .target("http://localhost:10000/services/concert-service-metrics")
+                .request()
+                .get(new GenericType<Map<String, Map<String, Object>>>() {
+                });
+        return ((Number) ((Map<?, ?>) metrics.get("idempotency").get("outcomes")).get("entries")).intValue();
+    }
+
+    /**
+     * Helper method - gets the number of concert dates whose seats have been created.
+     */
+    private int getMaterializedDates() {
+        Map<String, Map<String, Object>> metrics = client
+                .target("http://localhost:10000/services/concert-service-metrics")
+                .request()
+                .get(new GenericType<Map<String, Map<String, Object>>>() {
+                });
+        return ((Number) metrics.get("seatAvailability").get("materializedDates")).intValue();
+    }
+
+    /**
+     * Helper method - gets the number of bookings that the waiting rooms have let in.
+     */
+    private long getAdmittedBookings() {
+        Map<String, Map<String, Object>> metrics = client
+                .target("http://localhost:10000/services/concert-service-metrics")
+                .request()
+                .get(new GenericType<Map<String, Map<String, Object>>>() {
+                });
+        return ((Number) metrics.get("admission").get("admitted")).longValue();
+    }
+
+    /**
+     * Helper method - gets the number of requests authenticated from the token cache.
+     */
+    @SuppressWarnings("unchecked")
+    private long getTokenCacheHits() {
+        Map<String, Map<String, Object>> metrics = client
+                .target("http://localhost:10000/services/concert-service-metrics")
+                .request()
+                .get(new GenericType<Map<String, Map<String, Object>>>() {
+                });
+        Map<String, Object> tokenCache = (Map<String, Object>) metrics.get("authentication").get("tokenCache");
+        return ((Number) tokenCache.get("hits")).longValue();
+    }
+
     /**
      * Helper method - tries to book entire rows.
      */
@@ -837,4 +1558,35 @@ public class ConcertResourceIT {
         return client.target(WEB_SERVICE_URI + "/bookings").request().post(Entity.json(bReq));
     }
 
+    /**
+     * Attempts to hold the given seats for concert 1 on 2020-02-15, and returns the server's response. Should already
+     * be logged in.
+     */
+    private static Response holdSeats(Client client, int holdSeconds, String... seatLabels) {
+        SeatHoldRequestDTO hReq = new SeatHoldRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                Arrays.asList(seatLabels), holdSeconds);
+        return client.target(WEB_SERVICE_URI + "/holds").request().post(Entity.json(hReq));
+    }
+
+    /**
+     * Attempts to book the best available seats for concert 1 on 2020-02-15, and returns the server's response. Should
+     * already be logged in.
+     */
+    private static Response bookBestAvailable(Client client, int numSeats, String priceBand) {
+        BestAvailableRequestDTO bReq = new BestAvailableRequestDTO(1, LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                numSeats, priceBand);
+        return client.target(WEB_SERVICE_URI + "/bookings/best-available").request().post(Entity.json(bReq));
+    }
+
+    /**
+     * Helper method - gets the labels of a booking's seats, in theatre order.
+     */
+    private static List<String> seatLabelsOf(BookingDTO booking) {
+        return booking.getSeats().stream()
+                .map(SeatDTO::getLabel)
+                .sorted(Comparator.comparing((String label) -> label.charAt(0))
+                        .thenComparing(label -> Integer.parseInt(label.substring(1))))
+                .collect(Collectors.toList());
+    }
+
 }
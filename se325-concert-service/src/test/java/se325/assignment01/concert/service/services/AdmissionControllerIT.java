@@ -0,0 +1,193 @@
+package se325.assignment01.concert.service.services;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link AdmissionController}'s limits, with bookings that are held in progress until the test lets them
+ * finish. Each test has an AdmissionController of its own, configured to let one booking in at a time.
+ */
+public class AdmissionControllerIT {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+    private static final LocalDateTime OTHER_DATE = LocalDateTime.of(2020, 2, 16, 20, 0, 0);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch finishBookings = new CountDownLatch(1);
+    private final List<Future<Response>> bookings = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        finishBookings.countDown();
+        for (Future<Response> booking : bookings) {
+            try {
+                booking.get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // some of them are meant to be turned away
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that the global cap defaults to more than a single date's queue, so that each date's queue can fill up.
+     */
+    @Test
+    public void testDefaultLimits() {
+        Map<String, Object> metrics = new AdmissionController().getMetrics();
+
+        assertTrue((Integer) metrics.get("maxWaiting") >= (Integer) metrics.get("maxQueue"));
+    }
+
+    /**
+     * Tests that the global cap is raised to a date's queue length if it is configured below it.
+     */
+    @Test
+    public void testMaxWaitingAtLeastMaxQueue() {
+        Map<String, Object> metrics = admissionController(5, 1).getMetrics();
+
+        assertEquals(5, metrics.get("maxWaiting"));
+    }
+
+    /**
+     * Tests that a booking is turned away once its date's queue is full, while bookings for other dates are still
+     * let in.
+     */
+    @Test
+    public void testDateQueueFull() throws Exception {
+        AdmissionController controller = admissionController(1, 10);
+
+        // one booking in progress, and one waiting
+        startBooking(controller, DATE);
+        startBooking(controller, DATE);
+        awaitQueueLength(controller, DATE, 1);
+
+        assertUnavailable(controller, DATE);
+        assertEquals(1L, controller.getMetrics().get("rejectedQueueFull"));
+
+        startBooking(controller, OTHER_DATE);
+        awaitInProgress(controller, OTHER_DATE, 1);
+    }
+
+    /**
+     * Tests that a booking is turned away once too many bookings are waiting across all dates, even if its own
+     * date's queue has room.
+     */
+    @Test
+    public void testTooManyWaiting() throws Exception {
+        AdmissionController controller = admissionController(1, 1);
+
+        startBooking(controller, DATE);
+        startBooking(controller, DATE);
+        awaitQueueLength(controller, DATE, 1);
+
+        // OTHER_DATE's booking gets in, but there is no room for another one to wait
+        startBooking(controller, OTHER_DATE);
+        awaitInProgress(controller, OTHER_DATE, 1);
+        assertUnavailable(controller, OTHER_DATE);
+    }
+
+    /**
+     * Tests that clearing the controller gives each date a new waiting room, while the bookings waiting in the old
+     * ones are still counted until they finish.
+     */
+    @Test
+    public void testClear() throws Exception {
+        AdmissionController controller = admissionController(1, 1);
+
+        startBooking(controller, DATE);
+        startBooking(controller, DATE);
+        awaitQueueLength(controller, DATE, 1);
+
+        controller.clear();
+        assertTrue(datesOf(controller).isEmpty());
+        assertEquals(1, controller.getMetrics().get("waiting"));
+
+        startBooking(controller, DATE);
+        awaitInProgress(controller, DATE, 1);
+    }
+
+    /**
+     * Creates an AdmissionController that lets one booking for each date in at a time.
+     */
+    private static AdmissionController admissionController(int maxQueue, int maxWaiting) {
+        System.setProperty("concert.admission.maxConcurrent", "1");
+        System.setProperty("concert.admission.maxQueue", Integer.toString(maxQueue));
+        System.setProperty("concert.admission.maxWaiting", Integer.toString(maxWaiting));
+        try {
+            return new AdmissionController();
+        } finally {
+            System.clearProperty("concert.admission.maxConcurrent");
+            System.clearProperty("concert.admission.maxQueue");
+            System.clearProperty("concert.admission.maxWaiting");
+        }
+    }
+
+    /**
+     * Starts a booking that stays in progress until the test finishes.
+     */
+    private void startBooking(AdmissionController controller, LocalDateTime date) {
+        bookings.add(executor.submit(() -> controller.admit(date, () -> {
+            try {
+                finishBookings.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Response.ok().build();
+        })));
+    }
+
+    private static void assertUnavailable(AdmissionController controller, LocalDateTime date) {
+        try {
+            controller.admit(date, () -> Response.ok().build());
+            fail("Booking was let in");
+        } catch (WebApplicationException e) {
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), e.getResponse().getStatus());
+            assertNotNull(e.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+        }
+    }
+
+    private static void awaitQueueLength(AdmissionController controller, LocalDateTime date, int queueLength)
+            throws InterruptedException {
+        awaitRoom(controller, date, "queueLength", queueLength);
+    }
+
+    private static void awaitInProgress(AdmissionController controller, LocalDateTime date, int inProgress)
+            throws InterruptedException {
+        awaitRoom(controller, date, "inProgress", inProgress);
+    }
+
+    /**
+     * Waits for a date's waiting room to reach the given state, failing if it doesn't within a few seconds.
+     */
+    private static void awaitRoom(AdmissionController controller, LocalDateTime date, String metric, int expected)
+            throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Map<?, ?> room = (Map<?, ?>) datesOf(controller).get(date.toString());
+            if (room != null && Integer.valueOf(expected).equals(room.get(metric))) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Waiting room for " + date + " never had " + metric + " " + expected);
+    }
+
+    private static Map<?, ?> datesOf(AdmissionController controller) {
+        return (Map<?, ?>) controller.getMetrics().get("dates");
+    }
+}
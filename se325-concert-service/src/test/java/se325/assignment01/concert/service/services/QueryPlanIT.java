@@ -0,0 +1,168 @@
+package se325.assignment01.concert.service.services;
+
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se325.assignment01.concert.service.domain.Concert;
+import se325.assignment01.concert.service.domain.User;
+import se325.assignment01.concert.service.util.ConcertUtils;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.core.Cookie;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the lookups made on every booking and seat map request are answered from an index, rather than by
+ * scanning a whole table. The lookups are made through the service's own classes, against a database of the test's
+ * own; the SQL that Hibernate generates for them is recorded (see {@link RecordingStatementInspector}), and the
+ * database is asked how it would run each statement.
+ */
+public class QueryPlanIT {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+
+    private EntityManager em;
+
+    @Before
+    public void setUp() {
+        PersistenceManager.instance().reset();
+        ConcertUtils.initConcerts();
+
+        em = PersistenceManager.instance().createEntityManager();
+    }
+
+    @After
+    public void tearDown() {
+        if (em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+        em.close();
+    }
+
+    /**
+     * Tests that loading a date's seats into memory looks them up by date.
+     */
+    @Test
+    public void testSeatsByDateUseIndex() {
+        RecordingStatementInspector.clear();
+        SeatAvailabilityManager.instance().forDate(DATE);
+
+        assertPlansUse("SEAT", "IDX_SEAT_DATE_");
+    }
+
+    /**
+     * Tests that listing a date's seats by status looks them up by date and status.
+     */
+    @Test
+    public void testSeatListingUsesIndex() {
+        SeatAvailabilityManager.instance().forDate(DATE);
+
+        RecordingStatementInspector.clear();
+        new ConcertResource().getSeats(DATE.toString(), "Unbooked");
+
+        assertPlansUse("SEAT", "IDX_SEAT_DATE_IS_BOOKED");
+    }
+
+    /**
+     * Tests that both seat claim strategies look the seats up by date and label.
+     */
+    @Test
+    public void testSeatClaimsUseIndex() {
+        SeatAvailabilityManager.instance().forDate(DATE);
+
+        for (SeatClaimStrategy strategy : SeatClaimStrategy.values()) {
+            em.getTransaction().begin();
+            RecordingStatementInspector.clear();
+            strategy.claim(em, DATE, Arrays.asList("A1", "A2"));
+            em.flush();
+
+            assertPlansUse("SEAT", "IDX_SEAT_DATE_LABEL");
+            em.getTransaction().rollback();
+            em.clear();
+        }
+    }
+
+    /**
+     * Tests that listing a user's bookings finds their token by its key, and their bookings by user.
+     */
+    @Test
+    public void testBookingsByUserUseIndex() {
+        em.getTransaction().begin();
+        String authToken = Authenticator.instance().issueToken(em, em.find(User.class, 1L));
+        em.getTransaction().commit();
+        // make the token be looked up in the database, rather than found in the cache
+        Authenticator.instance().clear();
+
+        RecordingStatementInspector.clear();
+        new ConcertResource().getAllBookingsForUser(new Cookie("auth", authToken), 0, null, null);
+
+        assertPlansUse("AUTHENTICATIONS", "PRIMARY_KEY");
+        assertPlansUse("BOOKINGS", "IDX_BOOKINGS_USER_ID");
+    }
+
+    /**
+     * Tests that loading a concert's dates looks them up by concert.
+     */
+    @Test
+    public void testConcertDatesUseIndex() {
+        em.getEntityManagerFactory().getCache().evictAll();
+
+        RecordingStatementInspector.clear();
+        em.find(Concert.class, 1L).getDates().size();
+
+        assertPlansUse("CONCERT_DATES", "IDX_CONCERT_DATES_CONCERT_ID");
+    }
+
+    /**
+     * Checks the plan of each recorded query or update of a table: none of them may scan the whole table, and each of
+     * them must use the given index.
+     */
+    private void assertPlansUse(String table, String index) {
+        Pattern readsTable = Pattern.compile("(?i)^\\s*(select|update|delete)\\b.*\\b(from|update)\\s+" + table +
+                "\\b.*", Pattern.DOTALL);
+
+        List<String> plans = new ArrayList<>();
+        for (String sql : RecordingStatementInspector.recorded()) {
+            if (readsTable.matcher(sql).matches()) {
+                plans.add(explain(sql));
+            }
+        }
+
+        assertFalse("No statements for " + table, plans.isEmpty());
+        for (String plan : plans) {
+            assertFalse(plan, plan.contains("tableScan"));
+            assertTrue(plan, plan.contains(index));
+        }
+    }
+
+    /**
+     * @return The database's plan for a statement, which names the index it would use (or says it would scan the
+     * whole table). The statement's parameters are left unset, as they don't change the plan.
+     */
+    private String explain(String sql) {
+        EntityManager explainEm = PersistenceManager.instance().createEntityManager();
+        try {
+            StringBuilder plan = new StringBuilder();
+            explainEm.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1));
+                    }
+                }
+            });
+            return plan.toString();
+        } finally {
+            explainEm.close();
+        }
+    }
+}
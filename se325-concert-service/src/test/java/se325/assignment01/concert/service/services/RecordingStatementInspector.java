@@ -0,0 +1,42 @@
+package se325.assignment01.concert.service.services;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records every SQL statement that Hibernate prepares, so that tests can check the SQL that the service's queries
+ * are turned into. It is installed with the hibernate.session_factory.statement_inspector system property (see the
+ * failsafe configuration in pom.xml).
+ */
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static final List<String> statements = new ArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        synchronized (statements) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Forgets the statements recorded so far.
+     */
+    public static void clear() {
+        synchronized (statements) {
+            statements.clear();
+        }
+    }
+
+    /**
+     * @return The statements recorded since the last clear, in the order they were prepared.
+     */
+    public static List<String> recorded() {
+        synchronized (statements) {
+            return new ArrayList<>(statements);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package se325.assignment01.concert.service.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.util.ConcertUtils;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests each {@link SeatClaimStrategy} against a database of the test's own: that it claims free seats, that it
+ * rejects seats that are already booked, and that when two transactions race for the same seat, only one of them
+ * books it.
+ */
+@RunWith(Parameterized.class)
+public class SeatClaimStrategyIT {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Object[] strategies() {
+        return SeatClaimStrategy.values();
+    }
+
+    @Parameterized.Parameter
+    public SeatClaimStrategy strategy;
+
+    @Before
+    public void setUp() {
+        PersistenceManager.instance().reset();
+        ConcertUtils.initConcerts();
+
+        // create the date's seats
+        SeatAvailabilityManager.instance().forDate(DATE);
+    }
+
+    /**
+     * Tests that free seats are claimed, and are booked once the transaction commits.
+     */
+    @Test
+    public void testClaimFreeSeats() {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Set<Seat> seats = strategy.claim(em, DATE, Arrays.asList("A1", "A2"));
+            em.getTransaction().commit();
+
+            assertEquals(2, seats.size());
+        } finally {
+            em.close();
+        }
+
+        assertTrue(isBooked("A1"));
+        assertTrue(isBooked("A2"));
+        assertFalse(isBooked("A3"));
+    }
+
+    /**
+     * Tests that a claim including a seat that is already booked is rejected with 403, and that none of its seats are
+     * booked once it is rolled back.
+     */
+    @Test
+    public void testClaimBookedSeat() {
+        claimAndCommit("A2");
+
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            strategy.claim(em, DATE, Arrays.asList("A1", "A2"));
+            fail("Claimed a booked seat");
+        } catch (WebApplicationException e) {
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), e.getResponse().getStatus());
+        } finally {
+            em.getTransaction().rollback();
+            em.close();
+        }
+
+        assertFalse(isBooked("A1"));
+        assertTrue(isBooked("A2"));
+    }
+
+    /**
+     * Tests that when two transactions claim the same seat at once, without the in-memory claim that bookings make
+     * first, only one of them commits. The first transaction claims the seat and holds its transaction open while
+     * the second one claims it too.
+     */
+    @Test
+    public void testConcurrentClaims() throws Exception {
+        CountDownLatch firstClaimed = new CountDownLatch(1);
+        CountDownLatch secondClaiming = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = executor.submit(() -> claimAndCommit(Collections.singletonList("B5"), () -> {
+                firstClaimed.countDown();
+                // give the second claim time to reach the database before committing
+                secondClaiming.await();
+                Thread.sleep(200);
+            }));
+            Future<Boolean> second = executor.submit(() -> {
+                firstClaimed.await();
+                secondClaiming.countDown();
+                return claimAndCommit(Collections.singletonList("B5"), () -> {
+                });
+            });
+
+            boolean firstBooked = first.get(10, TimeUnit.SECONDS);
+            boolean secondBooked = second.get(10, TimeUnit.SECONDS);
+
+            assertTrue("Exactly one claim should succeed", firstBooked ^ secondBooked);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(isBooked("B5"));
+    }
+
+    /**
+     * Claims seats in a transaction of their own, which must succeed.
+     */
+    private void claimAndCommit(String... seatLabels) {
+        try {
+            assertTrue(claimAndCommit(Arrays.asList(seatLabels), () -> {
+            }));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Claims seats in a transaction of their own.
+     * @param beforeCommit Run after the seats have been claimed, before the transaction commits.
+     * @return Whether the seats were booked, or false if the claim was rejected or the transaction failed to commit.
+     */
+    private boolean claimAndCommit(List<String> seatLabels, BeforeCommit beforeCommit) throws Exception {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            strategy.claim(em, DATE, seatLabels);
+            beforeCommit.run();
+            em.getTransaction().commit();
+            return true;
+        } catch (WebApplicationException e) {
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), e.getResponse().getStatus());
+            return false;
+        } catch (RuntimeException e) {
+            // e.g. an optimistic lock failure at commit
+            return false;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private boolean isBooked(String seatLabel) {
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            return em.createQuery("SELECT seat.isBooked FROM Seat seat " +
+                    "WHERE seat.date = :date AND seat.label = :label", Boolean.class)
+                    .setParameter("date", DATE)
+                    .setParameter("label", seatLabel)
+                    .getSingleResult();
+        } finally {
+            em.close();
+        }
+    }
+
+    private interface BeforeCommit {
+        void run() throws Exception;
+    }
+}
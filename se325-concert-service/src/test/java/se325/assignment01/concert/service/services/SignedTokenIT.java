@@ -0,0 +1,121 @@
+package se325.assignment01.concert.service.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se325.assignment01.concert.service.domain.User;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link Authenticator}'s signed tokens (concert.auth.mode=signed). Each test makes its own Authenticators,
+ * configured with the keys and token lifetime it needs, rather than using the service's.
+ */
+public class SignedTokenIT {
+
+    private EntityManager em;
+    private User user;
+
+    @Before
+    public void setUp() {
+        em = PersistenceManager.instance().createEntityManager();
+        user = em.find(User.class, 1L);
+    }
+
+    @After
+    public void tearDown() {
+        em.close();
+    }
+
+    /**
+     * Tests that a token is accepted by the Authenticator that issued it, and identifies the user it was issued to.
+     */
+    @Test
+    public void testValidToken() {
+        Authenticator authenticator = signedAuthenticator("k1:secret-one", 60);
+        String authToken = authenticator.issueToken(em, user);
+
+        assertTrue(authToken.startsWith("k1."));
+        assertEquals(Long.valueOf(user.getId()), authenticator.authenticatedUserId(authToken));
+        assertEquals(user.getId(), authenticator.authenticate(em, authToken).getId());
+    }
+
+    /**
+     * Tests that a token whose user, expiry, key or signature has been changed is rejected.
+     */
+    @Test
+    public void testTamperedToken() {
+        Authenticator authenticator = signedAuthenticator("k1:secret-one", 60);
+        String[] parts = authenticator.issueToken(em, user).split("\\.");
+
+        String otherUser = parts[0] + "." + (user.getId() + 1) + "." + parts[2] + "." + parts[3];
+        String longerExpiry = parts[0] + "." + parts[1] + "." + (Long.parseLong(parts[2]) + 3600) + "." + parts[3];
+        String unknownKey = "k2." + parts[1] + "." + parts[2] + "." + parts[3];
+        String otherSignature = parts[0] + "." + parts[1] + "." + parts[2] + "." + parts[3].substring(1) + "A";
+
+        for (String authToken : new String[]{otherUser, longerExpiry, unknownKey, otherSignature, "not-a-token"}) {
+            assertNull(authToken, authenticator.authenticatedUserId(authToken));
+            assertNull(authToken, authenticator.authenticate(em, authToken));
+        }
+    }
+
+    /**
+     * Tests that a token is rejected once it has expired.
+     */
+    @Test
+    public void testExpiredToken() {
+        Authenticator authenticator = signedAuthenticator("k1:secret-one", -1);
+        String authToken = authenticator.issueToken(em, user);
+
+        assertNull(authenticator.authenticatedUserId(authToken));
+    }
+
+    /**
+     * Tests that when a new key is added in front of the old one, tokens signed with the old key are still accepted
+     * and new tokens are signed with the new key, and that old tokens are rejected once the old key is removed.
+     */
+    @Test
+    public void testRotatedKey() {
+        String oldToken = signedAuthenticator("k1:secret-one", 60).issueToken(em, user);
+
+        Authenticator rotating = signedAuthenticator("k2:secret-two,k1:secret-one", 60);
+        String newToken = rotating.issueToken(em, user);
+        assertTrue(newToken.startsWith("k2."));
+        assertEquals(Long.valueOf(user.getId()), rotating.authenticatedUserId(oldToken));
+        assertEquals(Long.valueOf(user.getId()), rotating.authenticatedUserId(newToken));
+
+        Authenticator rotated = signedAuthenticator("k2:secret-two", 60);
+        assertNull(rotated.authenticatedUserId(oldToken));
+        assertEquals(Long.valueOf(user.getId()), rotated.authenticatedUserId(newToken));
+    }
+
+    /**
+     * Tests that a key whose ID contains a dot is ignored, rather than signing tokens that can't be read back.
+     */
+    @Test
+    public void testKeyIdWithDotIgnored() {
+        Authenticator authenticator = signedAuthenticator("bad.key:secret-zero,k1:secret-one", 60);
+        String authToken = authenticator.issueToken(em, user);
+
+        assertTrue(authToken.startsWith("k1."));
+        assertEquals(Long.valueOf(user.getId()), authenticator.authenticatedUserId(authToken));
+    }
+
+    /**
+     * @return A new Authenticator for signed tokens, with the given keys and token lifetime.
+     */
+    private static Authenticator signedAuthenticator(String keys, long tokenTtlSeconds) {
+        System.setProperty("concert.auth.mode", "signed");
+        System.setProperty("concert.auth.keys", keys);
+        System.setProperty("concert.auth.tokenTtlSeconds", Long.toString(tokenTtlSeconds));
+        try {
+            return new Authenticator();
+        } finally {
+            System.clearProperty("concert.auth.mode");
+            System.clearProperty("concert.auth.keys");
+            System.clearProperty("concert.auth.tokenTtlSeconds");
+        }
+    }
+}